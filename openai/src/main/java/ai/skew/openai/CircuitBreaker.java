@@ -0,0 +1,83 @@
+package ai.langmesh.openai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker guarding telemetry uploads
+ *
+ * Opens after a run of consecutive failures, rejects attempts while open,
+ * and after the open period lets exactly one probe through (half-open). The
+ * probe's outcome closes the circuit again or re-opens it.
+ */
+final class CircuitBreaker {
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMs;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openUntilMs = new AtomicLong();
+
+    CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+    }
+
+    /**
+     * Whether an upload may be attempted now. Claims the half-open probe when
+     * the open period has elapsed.
+     */
+    boolean allowRequest() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.currentTimeMillis() >= openUntilMs.get()
+                        && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            case HALF_OPEN:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * True while uploads are being rejected and no probe is due yet
+     */
+    boolean isOpen() {
+        State current = state.get();
+        return current == State.HALF_OPEN
+                || (current == State.OPEN && System.currentTimeMillis() < openUntilMs.get());
+    }
+
+    /**
+     * @return true if this closed a circuit that was open or half-open
+     */
+    boolean onSuccess() {
+        consecutiveFailures.set(0);
+        return state.getAndSet(State.CLOSED) != State.CLOSED;
+    }
+
+    void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntilMs.set(System.currentTimeMillis() + openMs);
+            state.set(State.OPEN);
+        }
+    }
+
+    /**
+     * The endpoint answered but refused the request: says nothing about its
+     * health, so a claimed probe is handed back for the next attempt
+     */
+    void onRejected() {
+        if (state.get() == State.HALF_OPEN) {
+            openUntilMs.set(System.currentTimeMillis());
+            state.compareAndSet(State.HALF_OPEN, State.OPEN);
+        }
+    }
+
+    State getState() {
+        return state.get();
+    }
+}
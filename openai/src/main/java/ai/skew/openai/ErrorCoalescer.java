@@ -0,0 +1,163 @@
+package ai.langmesh.openai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds repeated identical errors into one event per window
+ *
+ * Errors are grouped by tenant, endpoint, model, error class and a hash of
+ * the message. The first error of a group is passed through untouched so it
+ * is reported without delay; repeats within the window are only counted,
+ * and when the window closes they are emitted as a single event carrying the
+ * occurrence count, first/last timestamps, summed usage and a latency summary.
+ */
+final class ErrorCoalescer {
+    private final Map<Key, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if the error was absorbed into a group and must not be sent on its own
+     */
+    boolean absorb(TelemetryClient.TelemetryPayload payload) {
+        Key key = new Key(payload);
+        while (true) {
+            Group group = groups.get(key);
+            if (group == null) {
+                // First of its kind in this window - report it as is
+                if (groups.putIfAbsent(key, new Group()) == null) {
+                    return false;
+                }
+                continue;
+            }
+            if (group.add(payload)) {
+                return true;
+            }
+            // Closed by a concurrent drain; start a new group
+            groups.remove(key, group);
+        }
+    }
+
+    /**
+     * Close every group and return one coalesced event per group that saw repeats
+     */
+    List<TelemetryClient.TelemetryPayload> drain() {
+        List<TelemetryClient.TelemetryPayload> events = new ArrayList<>();
+        for (Map.Entry<Key, Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            TelemetryClient.TelemetryPayload event = group.close();
+            groups.remove(entry.getKey(), group);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    boolean isIdle() {
+        return groups.isEmpty();
+    }
+
+    private static final class Key {
+        final String orgId;
+        final String projectId;
+        final String endpoint;
+        final String model;
+        final String errorClass;
+        final long messageHash;
+        private final int hash;
+
+        Key(TelemetryClient.TelemetryPayload payload) {
+            this.orgId = payload.getOrgId();
+            this.projectId = payload.getProjectId();
+            this.endpoint = payload.getEndpoint();
+            this.model = payload.getModel();
+            this.errorClass = payload.getErrorClass();
+            this.messageHash = payload.getErrorMessage() != null
+                    ? TelemetryClient.sampleHash(payload.getErrorMessage()) : 0;
+            this.hash = Objects.hash(orgId, projectId, endpoint, model, errorClass, messageHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return messageHash == other.messageHash
+                    && Objects.equals(orgId, other.orgId) && Objects.equals(projectId, other.projectId)
+                    && Objects.equals(endpoint, other.endpoint) && Objects.equals(model, other.model)
+                    && Objects.equals(errorClass, other.errorClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Repeats of one error within the window. Updates are cheap and rare next
+     * to the calls that failed, so a monitor is enough.
+     */
+    private static final class Group {
+        private boolean closed;
+        private TelemetryClient.TelemetryPayload first;
+        private int count;
+        private long lastEndNanos;
+        private int promptTokens;
+        private int completionTokens;
+        private int totalTokens;
+        private double costUsd;
+        private long latencySumMs;
+        private long latencyMinMs = Long.MAX_VALUE;
+        private long latencyMaxMs = Long.MIN_VALUE;
+
+        synchronized boolean add(TelemetryClient.TelemetryPayload payload) {
+            if (closed) {
+                return false;
+            }
+            if (first == null) {
+                first = payload;
+            }
+            count++;
+            lastEndNanos = Math.max(lastEndNanos, payload.getTimestampEndNanos());
+            promptTokens += payload.getPromptTokens();
+            completionTokens += payload.getCompletionTokens();
+            totalTokens += payload.getTotalTokens();
+            costUsd += payload.getCostEstimateUsd();
+            latencySumMs += payload.getLatencyMs();
+            latencyMinMs = Math.min(latencyMinMs, payload.getLatencyMs());
+            latencyMaxMs = Math.max(latencyMaxMs, payload.getLatencyMs());
+            return true;
+        }
+
+        synchronized TelemetryClient.TelemetryPayload close() {
+            closed = true;
+            if (count == 0) {
+                return null;
+            }
+            return TelemetryClient.TelemetryPayload.builder()
+                    .requestId(first.getRequestId())
+                    .orgId(first.getOrgId())
+                    .projectId(first.getProjectId())
+                    .endpoint(first.getEndpoint())
+                    .model(first.getModel())
+                    .maxTokens(first.getMaxTokens())
+                    .temperature(first.getTemperature())
+                    .timestampStartNanos(first.getTimestampStartNanos())
+                    .timestampEndNanos(lastEndNanos)
+                    .promptTokens(promptTokens)
+                    .completionTokens(completionTokens)
+                    .totalTokens(totalTokens)
+                    .costEstimateUsd(costUsd)
+                    .latencyMs(latencySumMs / count)
+                    .errorClass(first.getErrorClass())
+                    .errorMessage(first.getErrorMessage())
+                    .promptHash(first.getPromptHash())
+                    .occurrences(count, latencyMinMs, latencyMaxMs)
+                    .build();
+        }
+    }
+}
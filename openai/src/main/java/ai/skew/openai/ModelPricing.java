@@ -0,0 +1,312 @@
+package ai.langmesh.openai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Per-model token pricing used for cost estimates
+ *
+ * Prices come from the bundled pricing.properties or from a file that is
+ * reloaded when it changes. A table is immutable: models resolve by
+ * longest key that matches the whole name or a prefix ending at '-' or ':',
+ * walked through a precomputed trie, and resolutions are cached per model
+ * name. A reload builds a new table and swaps it in atomically, so a lookup
+ * never sees a half-loaded table and never allocates.
+ *
+ * The table is process-wide, so a pricing file is watched by one shared
+ * watcher for as long as any client uses it; a client asking for a
+ * different file is logged and keeps the table in use.
+ */
+final class ModelPricing {
+    static final String RESOURCE = "pricing.properties";
+    private static final String FALLBACK_KEY = "*";
+    // Flat rate for unknown models when the table has no '*' entry
+    private static final Price DEFAULT_FALLBACK = new Price(10.0, 10.0);
+    // Bounds the cache against unbounded distinct model names
+    private static final int MAX_CACHED_MODELS = 1024;
+    private static final Logger LOG = Logger.getLogger(ModelPricing.class.getName());
+
+    private static volatile Table current = loadBundled();
+    private static Path loadedFile;
+    private static FileTime loadedModified;
+    private static long loadedSize;
+    private static ScheduledThreadPoolExecutor watcher;
+    private static ScheduledFuture<?> watchTask;
+    private static Path watchedFile;
+    private static int watchers;
+
+    private ModelPricing() {
+    }
+
+    static double cost(String model, int promptTokens, int completionTokens) {
+        Price price = current.resolve(model);
+        return (promptTokens / 1_000_000.0) * price.inputPerMillion
+                + (completionTokens / 1_000_000.0) * price.outputPerMillion;
+    }
+
+    static Table current() {
+        return current;
+    }
+
+    /**
+     * Load the file if it differs from the one last loaded. A missing or
+     * malformed file leaves the current table in place.
+     *
+     * @return true if a new table was installed
+     */
+    static synchronized boolean reloadIfChanged(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (file.equals(loadedFile) && attributes.lastModifiedTime().equals(loadedModified)
+                    && attributes.size() == loadedSize) {
+                return false;
+            }
+            Table table;
+            try (InputStream in = Files.newInputStream(file)) {
+                table = parse(in);
+            }
+            current = table;
+            loadedFile = file;
+            loadedModified = attributes.lastModifiedTime();
+            loadedSize = attributes.size();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // Keep pricing with the last good table
+            return false;
+        }
+    }
+
+    /**
+     * Load the file now and check it for changes every interval until the
+     * last {@link #unwatch()}. A later interval for the same file is ignored.
+     *
+     * @return false, with a warning logged, if a different file is already
+     *         watched; pricing then stays with that file
+     */
+    static synchronized boolean watch(Path file, long intervalMs) {
+        Path normalized = file.toAbsolutePath().normalize();
+        if (watchedFile != null && !watchedFile.equals(normalized)) {
+            LOG.warning("Pricing file " + watchedFile + " is already in use in this process; ignoring " + normalized);
+            return false;
+        }
+        watchers++;
+        if (watchTask == null) {
+            watchedFile = normalized;
+            reloadIfChanged(normalized);
+            watchTask = watcher().scheduleWithFixedDelay(() -> reloadIfChanged(normalized),
+                    intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Drop one {@link #watch(Path, long)}; the last one stops the watcher.
+     * The table last loaded stays in place.
+     */
+    static synchronized void unwatch() {
+        if (watchers <= 0 || --watchers > 0) {
+            return;
+        }
+        watchTask.cancel(false);
+        watchTask = null;
+        watchedFile = null;
+    }
+
+    private static ScheduledThreadPoolExecutor watcher() {
+        if (watcher == null) {
+            watcher = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "langmesh-pricing");
+                t.setDaemon(true);
+                return t;
+            });
+            watcher.setKeepAliveTime(60, TimeUnit.SECONDS);
+            watcher.allowCoreThreadTimeOut(true);
+            watcher.setRemoveOnCancelPolicy(true);
+        }
+        return watcher;
+    }
+
+    /**
+     * Go back to the bundled table - mainly for tests
+     */
+    static synchronized void reset() {
+        current = loadBundled();
+        loadedFile = null;
+        loadedModified = null;
+        loadedSize = 0;
+    }
+
+    private static Table loadBundled() {
+        try (InputStream in = ModelPricing.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                return new Table(new TreeMap<>(), DEFAULT_FALLBACK);
+            }
+            return parse(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse "model=input, output" lines, in USD per 1M tokens
+     */
+    static Table parse(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        Map<String, Price> prices = new TreeMap<>();
+        Price fallback = DEFAULT_FALLBACK;
+        for (String model : properties.stringPropertyNames()) {
+            Price price = parsePrice(model, properties.getProperty(model));
+            if (FALLBACK_KEY.equals(model)) {
+                fallback = price;
+            } else if (!model.isEmpty()) {
+                prices.put(model, price);
+            }
+        }
+        return new Table(prices, fallback);
+    }
+
+    private static Price parsePrice(String model, String value) throws IOException {
+        String[] parts = value.split(",");
+        if (parts.length != 2) {
+            throw new IOException("Expected '<input>, <output>' for model " + model + ": " + value);
+        }
+        try {
+            double input = Double.parseDouble(parts[0].trim());
+            double output = Double.parseDouble(parts[1].trim());
+            if (!(input >= 0) || !(output >= 0) || Double.isInfinite(input) || Double.isInfinite(output)) {
+                throw new IOException("Negative or non-finite price for model " + model + ": " + value);
+            }
+            return new Price(input, output);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid price for model " + model + ": " + value, e);
+        }
+    }
+
+    /**
+     * USD per 1M input and output tokens
+     */
+    static final class Price {
+        final double inputPerMillion;
+        final double outputPerMillion;
+
+        Price(double inputPerMillion, double outputPerMillion) {
+            this.inputPerMillion = inputPerMillion;
+            this.outputPerMillion = outputPerMillion;
+        }
+    }
+
+    /**
+     * One immutable pricing table and its resolution cache
+     */
+    static final class Table {
+        private final Node root;
+        private final Price fallback;
+        private final ConcurrentHashMap<String, Price> resolved = new ConcurrentHashMap<>();
+
+        Table(Map<String, Price> prices, Price fallback) {
+            NodeBuilder builder = new NodeBuilder();
+            for (Map.Entry<String, Price> entry : prices.entrySet()) {
+                NodeBuilder node = builder;
+                for (int i = 0; i < entry.getKey().length(); i++) {
+                    node = node.children.computeIfAbsent(entry.getKey().charAt(i), c -> new NodeBuilder());
+                }
+                node.price = entry.getValue();
+            }
+            this.root = builder.build();
+            this.fallback = fallback;
+        }
+
+        Price resolve(String model) {
+            if (model == null) {
+                return fallback;
+            }
+            Price price = resolved.get(model);
+            if (price == null) {
+                price = match(model);
+                if (resolved.size() < MAX_CACHED_MODELS) {
+                    resolved.put(model, price);
+                }
+            }
+            return price;
+        }
+
+        private Price match(String model) {
+            Node node = root;
+            Price best = null;
+            int length = model.length();
+            for (int i = 0; node != null; i++) {
+                if (node.price != null && (i == length || isBoundary(model.charAt(i)))) {
+                    best = node.price;
+                }
+                if (i == length) {
+                    break;
+                }
+                node = node.child(model.charAt(i));
+            }
+            return best != null ? best : fallback;
+        }
+
+        private static boolean isBoundary(char c) {
+            return c == '-' || c == ':';
+        }
+    }
+
+    private static final class Node {
+        private final char[] labels;
+        private final Node[] children;
+        private final Price price;
+
+        Node(char[] labels, Node[] children, Price price) {
+            this.labels = labels;
+            this.children = children;
+            this.price = price;
+        }
+
+        Node child(char c) {
+            int low = 0;
+            int high = labels.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (labels[mid] < c) {
+                    low = mid + 1;
+                } else if (labels[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class NodeBuilder {
+        final TreeMap<Character, NodeBuilder> children = new TreeMap<>();
+        Price price;
+
+        Node build() {
+            char[] labels = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+                labels[i] = entry.getKey();
+                nodes[i] = entry.getValue().build();
+                i++;
+            }
+            return new Node(labels, nodes, price);
+        }
+    }
+}
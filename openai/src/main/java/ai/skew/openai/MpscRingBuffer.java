@@ -0,0 +1,100 @@
+package ai.langmesh.openai;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer/single-consumer ring buffer
+ *
+ * Producers claim a slot with a single CAS on the tail and publish the element
+ * into it; the consumer walks the head and clears slots as it goes. A claimed
+ * slot that has not been published yet reads as null, so the consumer simply
+ * stops there and picks it up on the next drain.
+ *
+ * Only one thread may consume at a time - callers serialize drain/poll.
+ */
+final class MpscRingBuffer<E> implements TelemetryBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    MpscRingBuffer(int requestedCapacity) {
+        int capacity = roundToPowerOfTwo(requestedCapacity);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        long capacity = mask + 1L;
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() >= capacity) {
+                return false;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) (t & mask), element);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        long h = head.get();
+        int index = (int) (h & mask);
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    @Override
+    public int drainTo(List<? super E> target, int limit) {
+        long h = head.get();
+        int count = 0;
+        while (count < limit) {
+            int index = (int) (h & mask);
+            E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(element);
+            h++;
+            count++;
+        }
+        head.lazySet(h);
+        return count;
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1L));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    static int roundToPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        if (value > (1 << 30)) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+}
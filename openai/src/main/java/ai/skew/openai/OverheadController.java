@@ -0,0 +1,123 @@
+package ai.langmesh.openai;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adapts the telemetry sample rate to an overhead budget
+ *
+ * Telemetry threads report the CPU time they spend building and serializing
+ * payloads and the bytes they upload. Once per control interval the measured
+ * rates are compared with the budget: over budget (or with the buffer filling
+ * up) the sample rate is cut in proportion to the overshoot, comfortably under
+ * budget it is raised gradually, never above the configured sampleRate nor
+ * below the floor.
+ */
+final class OverheadController {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = cpuTimeSupported();
+
+    /** Raise the rate only when every signal is below this share of its budget */
+    private static final double INCREASE_BELOW = 0.7;
+    private static final double INCREASE_FACTOR = 1.25;
+    /** Largest single cut, so one noisy interval cannot zero the rate */
+    private static final double MAX_DECREASE_FACTOR = 0.5;
+    private static final double OCCUPANCY_LIMIT = 0.75;
+
+    private final double cpuBudget;
+    private final long bytesPerSecondBudget;
+    private final double maxRate;
+    private final double minRate;
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile double rate;
+    private volatile double cpuUsage;
+    private volatile double bytesPerSecond;
+    private long lastAdjustNanos = System.nanoTime();
+
+    /**
+     * @param cpuPercent telemetry CPU budget as a percent of one core, 0 for none
+     * @param bytesPerSecondBudget upload budget, 0 for none
+     */
+    OverheadController(double cpuPercent, long bytesPerSecondBudget, double maxRate, double minRate) {
+        this.cpuBudget = Math.max(0, cpuPercent) / 100.0;
+        this.bytesPerSecondBudget = Math.max(0, bytesPerSecondBudget);
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        this.rate = maxRate;
+    }
+
+    /**
+     * CPU time of the calling thread, or wall time where the JVM cannot tell
+     */
+    static long threadCpuNanos() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void recordCpu(long nanos) {
+        cpuNanos.add(nanos);
+    }
+
+    void recordBytes(long count) {
+        bytes.add(count);
+    }
+
+    double rate() {
+        return rate;
+    }
+
+    /** Measured telemetry CPU over the last interval, as a fraction of one core */
+    double cpuUsage() {
+        return cpuUsage;
+    }
+
+    double bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Close the current interval and move the rate toward the budget
+     *
+     * @param occupancy fraction of the event buffer in use
+     * @return the new sample rate
+     */
+    synchronized double adjust(double occupancy) {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastAdjustNanos);
+        lastAdjustNanos = now;
+        cpuUsage = (double) cpuNanos.sumThenReset() / elapsed;
+        bytesPerSecond = bytes.sumThenReset() * 1e9 / elapsed;
+
+        double pressure = occupancy / OCCUPANCY_LIMIT;
+        if (cpuBudget > 0) {
+            pressure = Math.max(pressure, cpuUsage / cpuBudget);
+        }
+        if (bytesPerSecondBudget > 0) {
+            pressure = Math.max(pressure, bytesPerSecond / bytesPerSecondBudget);
+        }
+
+        double next = rate;
+        if (pressure > 1) {
+            next = rate * Math.max(MAX_DECREASE_FACTOR, 1 / pressure);
+        } else if (pressure < INCREASE_BELOW) {
+            next = rate * INCREASE_FACTOR;
+        }
+        rate = Math.max(minRate, Math.min(maxRate, next));
+        return rate;
+    }
+
+    private static boolean cpuTimeSupported() {
+        try {
+            if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+}
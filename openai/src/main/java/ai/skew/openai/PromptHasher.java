@@ -0,0 +1,137 @@
+package ai.langmesh.openai;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reusable, streaming prompt hasher
+ *
+ * One instance per thread and algorithm. Text is encoded to UTF-8 in chunks
+ * through a fixed scratch buffer and fed straight into the digest, so long
+ * prompts are never copied into a byte[] of their own. The result is the
+ * first 8 bytes of the digest as 16 lowercase hex chars.
+ */
+final class PromptHasher {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int CHUNK_BYTES = 8192;
+
+    private static final ThreadLocal<PromptHasher> SHA256 =
+            ThreadLocal.withInitial(() -> new PromptHasher(langmeshConfig.TelemetryConfig.PromptHash.SHA256));
+    private static final ThreadLocal<PromptHasher> XXHASH64 =
+            ThreadLocal.withInitial(() -> new PromptHasher(langmeshConfig.TelemetryConfig.PromptHash.XXHASH64));
+
+    private final MessageDigest sha256;
+    private final XxHash64 xxHash64;
+    // Room for one more 4-byte sequence when a chunk is flushed
+    private final byte[] chunk = new byte[CHUNK_BYTES + 4];
+    private final char[] hex = new char[16];
+    private int chunkLength;
+
+    private PromptHasher(langmeshConfig.TelemetryConfig.PromptHash algorithm) {
+        if (algorithm == langmeshConfig.TelemetryConfig.PromptHash.XXHASH64) {
+            this.sha256 = null;
+            this.xxHash64 = new XxHash64();
+        } else {
+            this.sha256 = newSha256();
+            this.xxHash64 = null;
+        }
+    }
+
+    /**
+     * This thread's hasher for the algorithm, reset and ready for input
+     */
+    static PromptHasher get(langmeshConfig.TelemetryConfig.PromptHash algorithm) {
+        PromptHasher hasher = algorithm == langmeshConfig.TelemetryConfig.PromptHash.XXHASH64
+                ? XXHASH64.get() : SHA256.get();
+        return hasher.reset();
+    }
+
+    PromptHasher reset() {
+        chunkLength = 0;
+        if (sha256 != null) {
+            sha256.reset();
+        } else {
+            xxHash64.reset();
+        }
+        return this;
+    }
+
+    /**
+     * Append text as UTF-8. Unpaired surrogates are encoded as '?', as
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    PromptHasher update(CharSequence text) {
+        if (text == null) {
+            return this;
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (chunkLength >= CHUNK_BYTES) {
+                flushChunk();
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                chunk[chunkLength++] = (byte) c;
+            } else if (c < 0x800) {
+                chunk[chunkLength++] = (byte) (0xC0 | c >> 6);
+                chunk[chunkLength++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                chunk[chunkLength++] = (byte) (0xF0 | cp >> 18);
+                chunk[chunkLength++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                chunk[chunkLength++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                chunk[chunkLength++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                chunk[chunkLength++] = '?';
+            } else {
+                chunk[chunkLength++] = (byte) (0xE0 | c >> 12);
+                chunk[chunkLength++] = (byte) (0x80 | c >> 6 & 0x3F);
+                chunk[chunkLength++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Finish the digest and return its hex prefix; the hasher is reset
+     */
+    String finish() {
+        flushChunk();
+        if (sha256 != null) {
+            byte[] digest = sha256.digest();
+            for (int i = 0; i < 8; i++) {
+                hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX[digest[i] & 0xF];
+            }
+        } else {
+            long digest = xxHash64.digest();
+            for (int i = 15; i >= 0; i--) {
+                hex[i] = HEX[(int) (digest & 0xF)];
+                digest >>>= 4;
+            }
+        }
+        reset();
+        return new String(hex);
+    }
+
+    private void flushChunk() {
+        if (chunkLength == 0) {
+            return;
+        }
+        if (sha256 != null) {
+            sha256.update(chunk, 0, chunkLength);
+        } else {
+            xxHash64.update(chunk, 0, chunkLength);
+        }
+        chunkLength = 0;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
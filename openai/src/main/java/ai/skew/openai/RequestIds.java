@@ -0,0 +1,63 @@
+package ai.langmesh.openai;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time-ordered request ID generator
+ *
+ * An ID is "req_" followed by 26 Crockford base32 chars: 48 bits of epoch
+ * millis, a 40-bit node id drawn once per JVM, a 20-bit per-thread slot and a
+ * 20-bit per-thread counter. Threads never share mutable state after their
+ * first ID, so generation is a clock read plus encoding into a per-thread
+ * char buffer; the returned String is the only allocation. IDs sort by
+ * creation time, and the random node id keeps them apart across JVMs.
+ */
+final class RequestIds {
+    static final String PREFIX = "req_";
+    static final int LENGTH = 30;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int FIELD_BITS = 20;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+    private static final long NODE = new SecureRandom().nextLong() & ((1L << 40) - 1);
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+    private static final ThreadLocal<Generator> GENERATOR = ThreadLocal.withInitial(Generator::new);
+
+    private RequestIds() {
+    }
+
+    static String next() {
+        return GENERATOR.get().next();
+    }
+
+    private static final class Generator {
+        private final char[] buf = new char[LENGTH];
+        private final int slot = NEXT_SLOT.getAndIncrement() & FIELD_MASK;
+        private int counter;
+
+        Generator() {
+            PREFIX.getChars(0, PREFIX.length(), buf, 0);
+            int pos = encode(buf, PREFIX.length() + 10, NODE, 8);
+            encode(buf, pos, slot, 4);
+        }
+
+        String next() {
+            encode(buf, PREFIX.length(), System.currentTimeMillis(), 10);
+            encode(buf, LENGTH - 4, counter++ & FIELD_MASK, 4);
+            return new String(buf);
+        }
+    }
+
+    /**
+     * Write the low 5 * chars bits of value as base32, most significant first
+     */
+    private static int encode(char[] buf, int pos, long value, int chars) {
+        for (int i = pos + chars - 1; i >= pos; i--) {
+            buf[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return pos + chars;
+    }
+}
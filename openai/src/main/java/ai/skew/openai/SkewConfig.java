@@ -1,5 +1,11 @@
 package ai.langmesh.openai;
 
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * langmesh SDK Configuration
  */
@@ -74,19 +80,102 @@ public class langmeshConfig {
         private final int batchSize;
         private final long flushIntervalMs;
         private final String endpoint;
+        private final int workerThreads;
+        private final int workerQueueSize;
+        private final int bufferCapacity;
+        private final IngestStrategy ingestStrategy;
+        private final int stripeCapacity;
+        private final Compression compression;
+        private final Path spoolDirectory;
+        private final long spoolMaxBytes;
+        private final int spoolSegmentBytes;
+        private final long maxBufferedBytes;
+        private final OverflowPolicy overflowPolicy;
+        private final int maxBatchSize;
+        private final long targetBatchBytes;
+        private final boolean aggregation;
+        private final long aggregationWindowMs;
+        private final long uploadTimeoutMs;
+        private final int maxRetries;
+        private final long retryInitialBackoffMs;
+        private final long retryMaxBackoffMs;
+        private final int circuitFailureThreshold;
+        private final long circuitOpenMs;
+        private final int maxInFlightUploads;
+        private final long shutdownTimeoutMs;
+        private final boolean registerShutdownHook;
+        private final PromptHash promptHash;
+        private final Path pricingFile;
+        private final long pricingReloadIntervalMs;
+        private final BatchFormat batchFormat;
+        private final boolean tailSampling;
+        private final long tailLatencyThresholdMs;
+        private final double tailCostThresholdUsd;
+        private final double overheadCpuPercent;
+        private final long overheadBytesPerSecond;
+        private final double minSampleRate;
+        private final boolean priorityErrors;
+        private final double priorityCostThresholdUsd;
+        private final int priorityBatchSize;
+        private final boolean errorCoalescing;
+        private final long errorCoalesceWindowMs;
+        private final int tenantBufferCapacity;
+        private final Map<String, Integer> tenantBufferCapacities;
+        private final int maxTenants;
 
-        private TelemetryConfig(boolean enabled, boolean includePrompts, double sampleRate,
-                                int batchSize, long flushIntervalMs, String endpoint) {
-            this.enabled = enabled;
-            this.includePrompts = includePrompts;
-            this.sampleRate = sampleRate;
-            this.batchSize = batchSize;
-            this.flushIntervalMs = flushIntervalMs;
-            this.endpoint = endpoint;
+        private TelemetryConfig(Builder builder) {
+            this.enabled = builder.enabled;
+            this.includePrompts = builder.includePrompts;
+            this.sampleRate = builder.sampleRate;
+            this.batchSize = builder.batchSize;
+            this.flushIntervalMs = builder.flushIntervalMs;
+            this.endpoint = builder.endpoint;
+            this.workerThreads = Math.max(1, builder.workerThreads);
+            this.workerQueueSize = Math.max(1, builder.workerQueueSize);
+            this.bufferCapacity = MpscRingBuffer.roundToPowerOfTwo(builder.bufferCapacity);
+            this.ingestStrategy = builder.ingestStrategy != null ? builder.ingestStrategy : IngestStrategy.SHARED_QUEUE;
+            this.stripeCapacity = MpscRingBuffer.roundToPowerOfTwo(builder.stripeCapacity);
+            this.compression = builder.compression != null ? builder.compression : Compression.NONE;
+            this.spoolDirectory = builder.spoolDirectory;
+            this.spoolMaxBytes = builder.spoolMaxBytes;
+            this.spoolSegmentBytes = builder.spoolSegmentBytes;
+            this.maxBufferedBytes = Math.max(1, builder.maxBufferedBytes);
+            this.overflowPolicy = builder.overflowPolicy != null ? builder.overflowPolicy : OverflowPolicy.DROP_NEWEST;
+            this.maxBatchSize = Math.max(builder.batchSize, builder.maxBatchSize);
+            this.targetBatchBytes = Math.max(1, builder.targetBatchBytes);
+            this.aggregation = builder.aggregation;
+            this.aggregationWindowMs = Math.max(1, builder.aggregationWindowMs);
+            this.uploadTimeoutMs = builder.uploadTimeoutMs;
+            this.maxRetries = Math.max(0, builder.maxRetries);
+            this.retryInitialBackoffMs = Math.max(1, builder.retryInitialBackoffMs);
+            this.retryMaxBackoffMs = Math.max(this.retryInitialBackoffMs, builder.retryMaxBackoffMs);
+            this.circuitFailureThreshold = Math.max(1, builder.circuitFailureThreshold);
+            this.circuitOpenMs = builder.circuitOpenMs;
+            this.maxInFlightUploads = Math.max(1, builder.maxInFlightUploads);
+            this.shutdownTimeoutMs = Math.max(0, builder.shutdownTimeoutMs);
+            this.registerShutdownHook = builder.registerShutdownHook;
+            this.promptHash = builder.promptHash != null ? builder.promptHash : PromptHash.SHA256;
+            this.pricingFile = builder.pricingFile;
+            this.pricingReloadIntervalMs = Math.max(1, builder.pricingReloadIntervalMs);
+            this.batchFormat = builder.batchFormat != null ? builder.batchFormat : BatchFormat.EVENTS;
+            this.tailSampling = builder.tailSampling;
+            this.tailLatencyThresholdMs = builder.tailLatencyThresholdMs;
+            this.tailCostThresholdUsd = builder.tailCostThresholdUsd;
+            this.overheadCpuPercent = Math.max(0, builder.overheadCpuPercent);
+            this.overheadBytesPerSecond = Math.max(0, builder.overheadBytesPerSecond);
+            this.minSampleRate = Math.max(0, Math.min(builder.sampleRate, builder.minSampleRate));
+            this.priorityErrors = builder.priorityErrors;
+            this.priorityCostThresholdUsd = builder.priorityCostThresholdUsd;
+            this.priorityBatchSize = Math.max(1, builder.priorityBatchSize);
+            this.errorCoalescing = builder.errorCoalescing;
+            this.errorCoalesceWindowMs = Math.max(1, builder.errorCoalesceWindowMs);
+            this.tenantBufferCapacity = Math.max(1, builder.tenantBufferCapacity);
+            this.tenantBufferCapacities = Collections.unmodifiableMap(new HashMap<>(builder.tenantBufferCapacities));
+            this.maxTenants = Math.max(1, builder.maxTenants);
         }
 
         public static TelemetryConfig defaults() {
-            return new TelemetryConfig(true, false, 1.0, 10, 5000, "https://api.langmesh.ai/v1/telemetry");
+            return builder().build();
         }
 
         public boolean isEnabled() { return enabled; }
@@ -95,6 +184,107 @@ public class langmeshConfig {
         public int getBatchSize() { return batchSize; }
         public long getFlushIntervalMs() { return flushIntervalMs; }
         public String getEndpoint() { return endpoint; }
+        public int getWorkerThreads() { return workerThreads; }
+        public int getWorkerQueueSize() { return workerQueueSize; }
+        public int getBufferCapacity() { return bufferCapacity; }
+        public IngestStrategy getIngestStrategy() { return ingestStrategy; }
+        public int getStripeCapacity() { return stripeCapacity; }
+        public Compression getCompression() { return compression; }
+        public Path getSpoolDirectory() { return spoolDirectory; }
+        public long getSpoolMaxBytes() { return spoolMaxBytes; }
+        public int getSpoolSegmentBytes() { return spoolSegmentBytes; }
+        public long getMaxBufferedBytes() { return maxBufferedBytes; }
+        public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+        public int getMaxBatchSize() { return maxBatchSize; }
+        public long getTargetBatchBytes() { return targetBatchBytes; }
+        public boolean isAggregation() { return aggregation; }
+        public long getAggregationWindowMs() { return aggregationWindowMs; }
+        public long getUploadTimeoutMs() { return uploadTimeoutMs; }
+        public int getMaxRetries() { return maxRetries; }
+        public long getRetryInitialBackoffMs() { return retryInitialBackoffMs; }
+        public long getRetryMaxBackoffMs() { return retryMaxBackoffMs; }
+        public int getCircuitFailureThreshold() { return circuitFailureThreshold; }
+        public long getCircuitOpenMs() { return circuitOpenMs; }
+        public int getMaxInFlightUploads() { return maxInFlightUploads; }
+        public long getShutdownTimeoutMs() { return shutdownTimeoutMs; }
+        public boolean isRegisterShutdownHook() { return registerShutdownHook; }
+        public PromptHash getPromptHash() { return promptHash; }
+        public Path getPricingFile() { return pricingFile; }
+        public long getPricingReloadIntervalMs() { return pricingReloadIntervalMs; }
+        public BatchFormat getBatchFormat() { return batchFormat; }
+        public boolean isTailSampling() { return tailSampling; }
+        public long getTailLatencyThresholdMs() { return tailLatencyThresholdMs; }
+        public double getTailCostThresholdUsd() { return tailCostThresholdUsd; }
+        public double getOverheadCpuPercent() { return overheadCpuPercent; }
+        public long getOverheadBytesPerSecond() { return overheadBytesPerSecond; }
+        public double getMinSampleRate() { return minSampleRate; }
+        public boolean isPriorityErrors() { return priorityErrors; }
+        public double getPriorityCostThresholdUsd() { return priorityCostThresholdUsd; }
+        public int getPriorityBatchSize() { return priorityBatchSize; }
+        public boolean isErrorCoalescing() { return errorCoalescing; }
+        public long getErrorCoalesceWindowMs() { return errorCoalesceWindowMs; }
+        public int getTenantBufferCapacity() { return tenantBufferCapacity; }
+        /** Per-tenant overrides keyed by orgId + '\n' + projectId */
+        public Map<String, Integer> getTenantBufferCapacities() { return tenantBufferCapacities; }
+        public int getMaxTenants() { return maxTenants; }
+        /** True when an overhead budget is set and the sample rate adapts to it */
+        public boolean isAdaptiveSampling() { return overheadCpuPercent > 0 || overheadBytesPerSecond > 0; }
+
+        /**
+         * Equal when every setting is equal; clients are only shared between equal configs
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TelemetryConfig)) return false;
+            TelemetryConfig other = (TelemetryConfig) o;
+            return enabled == other.enabled && includePrompts == other.includePrompts
+                    && Double.compare(sampleRate, other.sampleRate) == 0 && batchSize == other.batchSize
+                    && flushIntervalMs == other.flushIntervalMs && workerThreads == other.workerThreads
+                    && workerQueueSize == other.workerQueueSize && bufferCapacity == other.bufferCapacity
+                    && stripeCapacity == other.stripeCapacity && spoolMaxBytes == other.spoolMaxBytes
+                    && spoolSegmentBytes == other.spoolSegmentBytes && maxBufferedBytes == other.maxBufferedBytes
+                    && maxBatchSize == other.maxBatchSize && targetBatchBytes == other.targetBatchBytes
+                    && aggregation == other.aggregation && aggregationWindowMs == other.aggregationWindowMs
+                    && uploadTimeoutMs == other.uploadTimeoutMs && maxRetries == other.maxRetries
+                    && retryInitialBackoffMs == other.retryInitialBackoffMs
+                    && retryMaxBackoffMs == other.retryMaxBackoffMs
+                    && circuitFailureThreshold == other.circuitFailureThreshold
+                    && circuitOpenMs == other.circuitOpenMs && maxInFlightUploads == other.maxInFlightUploads
+                    && shutdownTimeoutMs == other.shutdownTimeoutMs
+                    && registerShutdownHook == other.registerShutdownHook
+                    && pricingReloadIntervalMs == other.pricingReloadIntervalMs
+                    && tailSampling == other.tailSampling && tailLatencyThresholdMs == other.tailLatencyThresholdMs
+                    && Double.compare(tailCostThresholdUsd, other.tailCostThresholdUsd) == 0
+                    && Double.compare(overheadCpuPercent, other.overheadCpuPercent) == 0
+                    && overheadBytesPerSecond == other.overheadBytesPerSecond
+                    && Double.compare(minSampleRate, other.minSampleRate) == 0
+                    && priorityErrors == other.priorityErrors
+                    && Double.compare(priorityCostThresholdUsd, other.priorityCostThresholdUsd) == 0
+                    && priorityBatchSize == other.priorityBatchSize && errorCoalescing == other.errorCoalescing
+                    && errorCoalesceWindowMs == other.errorCoalesceWindowMs
+                    && tenantBufferCapacity == other.tenantBufferCapacity && maxTenants == other.maxTenants
+                    && ingestStrategy == other.ingestStrategy && compression == other.compression
+                    && overflowPolicy == other.overflowPolicy && promptHash == other.promptHash
+                    && batchFormat == other.batchFormat && Objects.equals(endpoint, other.endpoint)
+                    && Objects.equals(spoolDirectory, other.spoolDirectory)
+                    && Objects.equals(pricingFile, other.pricingFile)
+                    && Objects.equals(tenantBufferCapacities, other.tenantBufferCapacities);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(enabled, includePrompts, sampleRate, batchSize, flushIntervalMs, endpoint, workerThreads,
+                    workerQueueSize, bufferCapacity, ingestStrategy, stripeCapacity, compression,
+                    spoolDirectory, spoolMaxBytes, spoolSegmentBytes, maxBufferedBytes, overflowPolicy,
+                    maxBatchSize, targetBatchBytes, aggregation, aggregationWindowMs, uploadTimeoutMs,
+                    maxRetries, retryInitialBackoffMs, retryMaxBackoffMs, circuitFailureThreshold,
+                    circuitOpenMs, maxInFlightUploads, shutdownTimeoutMs, registerShutdownHook, promptHash,
+                    pricingFile, pricingReloadIntervalMs, batchFormat, tailSampling, tailLatencyThresholdMs,
+                    tailCostThresholdUsd, overheadCpuPercent, overheadBytesPerSecond, minSampleRate,
+                    priorityErrors, priorityCostThresholdUsd, priorityBatchSize, errorCoalescing,
+                    errorCoalesceWindowMs, tenantBufferCapacity, tenantBufferCapacities, maxTenants);
+        }
 
         public static Builder builder() { return new Builder(); }
 
@@ -105,18 +295,197 @@ public class langmeshConfig {
             private int batchSize = 10;
             private long flushIntervalMs = 5000;
             private String endpoint = "https://api.langmesh.ai/v1/telemetry";
+            private int workerThreads = 1;
+            private int workerQueueSize = 1024;
+            private int bufferCapacity = 4096;
+            private IngestStrategy ingestStrategy = IngestStrategy.SHARED_QUEUE;
+            private int stripeCapacity = 256;
+            private Compression compression = Compression.NONE;
+            private Path spoolDirectory;
+            private long spoolMaxBytes = 64L * 1024 * 1024;
+            private int spoolSegmentBytes = 4 * 1024 * 1024;
+            private long maxBufferedBytes = 8L * 1024 * 1024;
+            private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+            private int maxBatchSize = 500;
+            private long targetBatchBytes = 256 * 1024;
+            private boolean aggregation = false;
+            private long aggregationWindowMs = 60_000;
+            private long uploadTimeoutMs = 5000;
+            private int maxRetries = 3;
+            private long retryInitialBackoffMs = 250;
+            private long retryMaxBackoffMs = 10_000;
+            private int circuitFailureThreshold = 5;
+            private long circuitOpenMs = 30_000;
+            private int maxInFlightUploads = 4;
+            private long shutdownTimeoutMs = 5000;
+            private boolean registerShutdownHook = false;
+            private PromptHash promptHash = PromptHash.SHA256;
+            private Path pricingFile;
+            private long pricingReloadIntervalMs = 30_000;
+            private BatchFormat batchFormat = BatchFormat.EVENTS;
+            private boolean tailSampling = false;
+            private long tailLatencyThresholdMs = 5000;
+            private double tailCostThresholdUsd = 0.5;
+            private double overheadCpuPercent = 0;
+            private long overheadBytesPerSecond = 0;
+            private double minSampleRate = 0.001;
+            private boolean priorityErrors = false;
+            private double priorityCostThresholdUsd = 0;
+            private int priorityBatchSize = 20;
+            private boolean errorCoalescing = false;
+            private long errorCoalesceWindowMs = 5000;
+            private int tenantBufferCapacity = 512;
+            private final Map<String, Integer> tenantBufferCapacities = new HashMap<>();
+            private int maxTenants = 256;
 
             public Builder enabled(boolean enabled) { this.enabled = enabled; return this; }
             public Builder includePrompts(boolean includePrompts) { this.includePrompts = includePrompts; return this; }
             public Builder sampleRate(double sampleRate) { this.sampleRate = sampleRate; return this; }
+            /** Smallest batch that triggers an early flush; grows toward maxBatchSize with traffic */
             public Builder batchSize(int batchSize) { this.batchSize = batchSize; return this; }
+            /** Longest an event waits in the buffer before it is flushed */
             public Builder flushIntervalMs(long flushIntervalMs) { this.flushIntervalMs = flushIntervalMs; return this; }
             public Builder endpoint(String endpoint) { this.endpoint = endpoint; return this; }
+            /** Number of daemon threads that build and submit payloads off the caller thread */
+            public Builder workerThreads(int workerThreads) { this.workerThreads = workerThreads; return this; }
+            /** Pending work items before new telemetry is dropped instead of queued */
+            public Builder workerQueueSize(int workerQueueSize) { this.workerQueueSize = workerQueueSize; return this; }
+            /** Hard cap on events held between flushes, rounded up to a power of two */
+            public Builder bufferCapacity(int bufferCapacity) { this.bufferCapacity = bufferCapacity; return this; }
+            public Builder ingestStrategy(IngestStrategy ingestStrategy) { this.ingestStrategy = ingestStrategy; return this; }
+            /** Events each telemetry worker thread may hold between flushes with {@link IngestStrategy#STRIPED} */
+            public Builder stripeCapacity(int stripeCapacity) { this.stripeCapacity = stripeCapacity; return this; }
+            public Builder compression(Compression compression) { this.compression = compression; return this; }
+            /** Directory for spooling batches that fail to upload; spooling is off when unset */
+            public Builder spoolDirectory(Path spoolDirectory) { this.spoolDirectory = spoolDirectory; return this; }
+            /** Disk cap for the spool - the oldest segment is evicted beyond it */
+            public Builder spoolMaxBytes(long spoolMaxBytes) { this.spoolMaxBytes = spoolMaxBytes; return this; }
+            public Builder spoolSegmentBytes(int spoolSegmentBytes) { this.spoolSegmentBytes = spoolSegmentBytes; return this; }
+            /** Hard cap on the estimated size of events held between flushes */
+            public Builder maxBufferedBytes(long maxBufferedBytes) { this.maxBufferedBytes = maxBufferedBytes; return this; }
+            public Builder overflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; return this; }
+            /** Upper bound for the adaptive batch size; set equal to batchSize to disable growth */
+            public Builder maxBatchSize(int maxBatchSize) { this.maxBatchSize = maxBatchSize; return this; }
+            /** Estimated bytes per upload at which a batch is flushed early and split */
+            public Builder targetBatchBytes(long targetBatchBytes) { this.targetBatchBytes = targetBatchBytes; return this; }
+            /** Ship per-key rollups each window instead of individual successful events; errors are still sent */
+            public Builder aggregation(boolean aggregation) { this.aggregation = aggregation; return this; }
+            public Builder aggregationWindowMs(long aggregationWindowMs) { this.aggregationWindowMs = aggregationWindowMs; return this; }
+            /** Connect, write and read timeout for each upload */
+            public Builder uploadTimeoutMs(long uploadTimeoutMs) { this.uploadTimeoutMs = uploadTimeoutMs; return this; }
+            /** Retries for a batch that failed with a network error, 408, 429 or 5xx */
+            public Builder maxRetries(int maxRetries) { this.maxRetries = maxRetries; return this; }
+            public Builder retryInitialBackoffMs(long retryInitialBackoffMs) { this.retryInitialBackoffMs = retryInitialBackoffMs; return this; }
+            public Builder retryMaxBackoffMs(long retryMaxBackoffMs) { this.retryMaxBackoffMs = retryMaxBackoffMs; return this; }
+            /** Consecutive failed uploads that open the circuit */
+            public Builder circuitFailureThreshold(int circuitFailureThreshold) { this.circuitFailureThreshold = circuitFailureThreshold; return this; }
+            /** How long the circuit stays open before a single probe upload is tried */
+            public Builder circuitOpenMs(long circuitOpenMs) { this.circuitOpenMs = circuitOpenMs; return this; }
+            /** Batches that may be uploading or waiting on a retry at once; further events stay buffered */
+            public Builder maxInFlightUploads(int maxInFlightUploads) { this.maxInFlightUploads = maxInFlightUploads; return this; }
+            /** Deadline for draining and uploading remaining telemetry on shutdown */
+            public Builder shutdownTimeoutMs(long shutdownTimeoutMs) { this.shutdownTimeoutMs = shutdownTimeoutMs; return this; }
+            /** Drain telemetry from a JVM shutdown hook, so it survives process exit; off by default */
+            public Builder registerShutdownHook(boolean registerShutdownHook) { this.registerShutdownHook = registerShutdownHook; return this; }
+            /** Hash used for the prompt dedup key when includePrompts is on */
+            public Builder promptHash(PromptHash promptHash) { this.promptHash = promptHash; return this; }
+            /** Model pricing file replacing the bundled table, in the same format as pricing.properties; reloaded when it changes. One file per process */
+            public Builder pricingFile(Path pricingFile) { this.pricingFile = pricingFile; return this; }
+            /** How often the pricing file is checked for changes */
+            public Builder pricingReloadIntervalMs(long pricingReloadIntervalMs) { this.pricingReloadIntervalMs = pricingReloadIntervalMs; return this; }
+            public Builder batchFormat(BatchFormat batchFormat) { this.batchFormat = batchFormat; return this; }
+            /** Decide after the call: keep errors and calls over the latency or cost threshold, sample the rest at sampleRate */
+            public Builder tailSampling(boolean tailSampling) { this.tailSampling = tailSampling; return this; }
+            /** Tail sampling keeps calls at least this slow; 0 or less turns the rule off */
+            public Builder tailLatencyThresholdMs(long tailLatencyThresholdMs) { this.tailLatencyThresholdMs = tailLatencyThresholdMs; return this; }
+            /** Tail sampling keeps calls estimated to cost at least this much; 0 or less turns the rule off */
+            public Builder tailCostThresholdUsd(double tailCostThresholdUsd) { this.tailCostThresholdUsd = tailCostThresholdUsd; return this; }
+            /** CPU budget for telemetry work, in percent of one core; lowers the sample rate when exceeded. 0 means none */
+            public Builder overheadCpuPercent(double overheadCpuPercent) { this.overheadCpuPercent = overheadCpuPercent; return this; }
+            /** Upload budget in bytes per second; lowers the sample rate when exceeded. 0 means none */
+            public Builder overheadBytesPerSecond(long overheadBytesPerSecond) { this.overheadBytesPerSecond = overheadBytesPerSecond; return this; }
+            /** Floor for the sample rate when it adapts to an overhead budget */
+            public Builder minSampleRate(double minSampleRate) { this.minSampleRate = minSampleRate; return this; }
+            /** Upload error events right away in small batches instead of waiting for the flush timer; off by default */
+            public Builder priorityErrors(boolean priorityErrors) { this.priorityErrors = priorityErrors; return this; }
+            /** Also send events estimated to cost at least this much right away; 0 or less turns this off */
+            public Builder priorityCostThresholdUsd(double priorityCostThresholdUsd) { this.priorityCostThresholdUsd = priorityCostThresholdUsd; return this; }
+            /** Largest batch uploaded by the priority lane */
+            public Builder priorityBatchSize(int priorityBatchSize) { this.priorityBatchSize = priorityBatchSize; return this; }
+            /** Send the first of a run of identical errors, then one event per window counting the repeats */
+            public Builder errorCoalescing(boolean errorCoalescing) { this.errorCoalescing = errorCoalescing; return this; }
+            public Builder errorCoalesceWindowMs(long errorCoalesceWindowMs) { this.errorCoalesceWindowMs = errorCoalesceWindowMs; return this; }
+            /** Events each tenant may hold between flushes with {@link IngestStrategy#PER_TENANT} */
+            public Builder tenantBufferCapacity(int tenantBufferCapacity) { this.tenantBufferCapacity = tenantBufferCapacity; return this; }
+            /** Quota for one tenant, overriding tenantBufferCapacity */
+            public Builder tenantBufferCapacity(String orgId, String projectId, int capacity) {
+                this.tenantBufferCapacities.put(TenantBuffer.tenantKey(orgId, projectId), capacity);
+                return this;
+            }
+            /** Tenants with their own buffer; any further tenants share one overflow buffer */
+            public Builder maxTenants(int maxTenants) { this.maxTenants = maxTenants; return this; }
 
             public TelemetryConfig build() {
-                return new TelemetryConfig(enabled, includePrompts, sampleRate, batchSize, flushIntervalMs, endpoint);
+                return new TelemetryConfig(this);
             }
         }
+
+        /**
+         * How request threads hand events to the flusher
+         */
+        public enum IngestStrategy {
+            /** One lock-free queue shared by all threads; a full batch triggers an early flush */
+            SHARED_QUEUE,
+            /** Per-worker-thread buffers harvested on each flush tick or once half full; no shared writes on submit */
+            STRIPED,
+            /** One buffer per (orgId, projectId) with its own quota, drained round-robin */
+            PER_TENANT
+        }
+
+        /**
+         * Content-Encoding used for telemetry uploads
+         */
+        public enum Compression {
+            NONE,
+            GZIP,
+            /** zlib deflate primed with the shipped telemetry dictionary */
+            DEFLATE_DICTIONARY
+        }
+
+        /**
+         * What to do with new events when the buffer is at its cap
+         */
+        public enum OverflowPolicy {
+            /** Reject the incoming event */
+            DROP_NEWEST,
+            /** Evict buffered events, oldest first, to make room */
+            DROP_OLDEST,
+            /** Accept with falling probability once the buffer is half full */
+            SAMPLE_DOWN
+        }
+
+        /**
+         * Wire layout of an uploaded batch
+         */
+        public enum BatchFormat {
+            /** One self-contained nested object per event */
+            EVENTS,
+            /**
+             * Flat events whose tenant, endpoint, model and error class are indexes
+             * into a per-batch string table; the SDK context is sent once per batch
+             */
+            DICTIONARY
+        }
+
+        /**
+         * Hash behind TelemetryPayload.promptHash - both yield 16 hex chars
+         */
+        public enum PromptHash {
+            /** First 8 bytes of SHA-256 */
+            SHA256,
+            /** xxHash64 - much cheaper on long prompts, not collision resistant */
+            XXHASH64
+        }
     }
 
     /**
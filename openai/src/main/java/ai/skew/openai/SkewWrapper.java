@@ -1,8 +1,9 @@
 package ai.langmesh.openai;
 
 import java.lang.reflect.*;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * langmesh OpenAI Wrapper
@@ -16,6 +17,9 @@ import java.util.*;
  * - Proxy only activates when explicitly enabled
  */
 public class langmeshWrapper {
+    // Keep ("ab", "c") and ("a", "bc") from hashing alike
+    private static final String UNIT_SEPARATOR = "\u001f";
+    private static final String RECORD_SEPARATOR = "\u001e";
     
     /**
      * Wrap an OpenAI service with langmesh telemetry and optional proxy
@@ -27,7 +31,7 @@ public class langmeshWrapper {
      */
     @SuppressWarnings("unchecked")
     public static <T> T wrap(T service, langmeshConfig config) {
-        TelemetryClient telemetryClient = new TelemetryClient(
+        TelemetryClient telemetryClient = TelemetryClient.acquire(
                 config.getApiKey(),
                 config.getTelemetry()
         );
@@ -48,11 +52,84 @@ public class langmeshWrapper {
         return wrap(service, langmeshConfig.builder(apiKey).build());
     }
 
+    /**
+     * Prompt dedup key for a chat or completion request, or null if it has no prompt.
+     * Each message's role and content are streamed into one running digest, so the
+     * conversation is never concatenated into a single String.
+     */
+    static String hashRequestPrompt(Object request, langmeshConfig.TelemetryConfig.PromptHash algorithm) {
+        if (request == null) {
+            return null;
+        }
+        try {
+            PromptHasher hasher = PromptHasher.get(algorithm);
+            Object prompt = invokeGetter(request, "getMessages");
+            if (prompt == null) {
+                prompt = invokeGetter(request, "getPrompt");
+            }
+            if (prompt instanceof Collection) {
+                Class<?> messageClass = null;
+                Method getRole = null;
+                Method getContent = null;
+                for (Object message : (Collection<?>) prompt) {
+                    if (message instanceof CharSequence) {
+                        hasher.update((CharSequence) message).update(RECORD_SEPARATOR);
+                        continue;
+                    }
+                    if (message == null) {
+                        continue;
+                    }
+                    if (message.getClass() != messageClass) {
+                        messageClass = message.getClass();
+                        getRole = findGetter(messageClass, "getRole");
+                        getContent = findGetter(messageClass, "getContent");
+                    }
+                    hasher.update(text(getRole != null ? getRole.invoke(message) : null))
+                            .update(UNIT_SEPARATOR)
+                            .update(text(getContent != null ? getContent.invoke(message) : null))
+                            .update(RECORD_SEPARATOR);
+                }
+            } else if (prompt != null) {
+                hasher.update(text(prompt));
+            } else {
+                return null;
+            }
+            return hasher.finish();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Object invokeGetter(Object target, String name) throws ReflectiveOperationException {
+        Method getter = findGetter(target.getClass(), name);
+        return getter != null ? getter.invoke(target) : null;
+    }
+
+    private static Method findGetter(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static CharSequence text(Object value) {
+        if (value == null) {
+            return "";
+        }
+        return value instanceof CharSequence ? (CharSequence) value : value.toString();
+    }
+
     private static class langmeshInvocationHandler<T> implements InvocationHandler {
+        // Payloads are built on telemetry worker threads; one builder each is enough
+        private static final ThreadLocal<TelemetryClient.TelemetryPayload.Builder> PAYLOAD_BUILDER =
+                ThreadLocal.withInitial(TelemetryClient.TelemetryPayload::builder);
+
         private final T target;
         private final langmeshConfig config;
         private final TelemetryClient telemetryClient;
         private final boolean proxyActive;
+        private final AtomicBoolean released = new AtomicBoolean();
 
         langmeshInvocationHandler(T target, langmeshConfig config, TelemetryClient telemetryClient, boolean proxyActive) {
             this.target = target;
@@ -81,27 +158,41 @@ public class langmeshWrapper {
                 telemetryClient.flush();
                 return null;
             }
+            if ("releaseTelemetry".equals(methodName)) {
+                if (released.compareAndSet(false, true)) {
+                    telemetryClient.release();
+                }
+                return null;
+            }
             if ("isProxyActive".equals(methodName)) {
                 return proxyActive;
             }
 
             String requestId = TelemetryClient.generateRequestId();
-            String timestampStart = Instant.now().toString();
-            long startTime = System.currentTimeMillis();
+            if (!telemetryClient.shouldRecord(requestId)) {
+                // Sampled out - no timing, no payload
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            long startNanos = Timestamps.nowEpochNanos();
+            long startTick = System.nanoTime();
 
             try {
                 Object result = method.invoke(target, args);
-                long latencyMs = System.currentTimeMillis() - startTime;
+                long elapsedNanos = System.nanoTime() - startTick;
                 
                 // Send telemetry asynchronously
-                sendTelemetryAsync(requestId, timestampStart, methodName, args, result, null, latencyMs);
+                sendTelemetryAsync(requestId, startNanos, methodName, args, result, null, elapsedNanos);
                 
                 return result;
             } catch (InvocationTargetException e) {
-                long latencyMs = System.currentTimeMillis() - startTime;
+                long elapsedNanos = System.nanoTime() - startTick;
                 
                 // Send error telemetry
-                sendTelemetryAsync(requestId, timestampStart, methodName, args, null, e.getCause(), latencyMs);
+                sendTelemetryAsync(requestId, startNanos, methodName, args, null, e.getCause(), elapsedNanos);
                 
                 throw e.getCause();
             }
@@ -109,55 +200,57 @@ public class langmeshWrapper {
 
         private void sendTelemetryAsync(
                 String requestId,
-                String timestampStart,
+                long startNanos,
                 String methodName,
                 Object[] args,
                 Object result,
                 Throwable error,
-                long latencyMs
+                long elapsedNanos
         ) {
-            new Thread(() -> {
+            telemetryClient.dispatch(() -> {
                 try {
-                    sendTelemetry(requestId, timestampStart, methodName, args, result, error, latencyMs);
+                    sendTelemetry(requestId, startNanos, methodName, args, result, error, elapsedNanos);
                 } catch (Exception e) {
                     // Silent drop
                 }
-            }, "langmesh-telemetry-send").start();
+            });
         }
 
         private void sendTelemetry(
                 String requestId,
-                String timestampStart,
+                long startNanos,
                 String methodName,
                 Object[] args,
                 Object result,
                 Throwable error,
-                long latencyMs
+                long elapsedNanos
         ) {
-            String timestampEnd = Instant.now().toString();
-            
             // Try to extract model and usage from request/result
             String model = extractModel(args);
             int[] tokenUsage = extractTokenUsage(result);
             int promptTokens = tokenUsage[0];
             int completionTokens = tokenUsage[1];
             int totalTokens = tokenUsage[2];
+            String promptHash = config.getTelemetry().isIncludePrompts() && args != null && args.length > 0
+                    ? hashRequestPrompt(args[0], config.getTelemetry().getPromptHash())
+                    : null;
             
-            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+            TelemetryClient.TelemetryPayload payload = PAYLOAD_BUILDER.get().reset()
                     .requestId(requestId)
                     .orgId(config.getOrgId() != null ? config.getOrgId() : "")
                     .projectId(config.getProjectId())
                     .endpoint(methodToEndpoint(methodName))
                     .model(model)
-                    .timestampStart(timestampStart)
-                    .timestampEnd(timestampEnd)
+                    .timestampStartNanos(startNanos)
+                    .timestampEndNanos(startNanos + elapsedNanos)
                     .promptTokens(promptTokens)
                     .completionTokens(completionTokens)
                     .totalTokens(totalTokens)
                     .costEstimateUsd(TelemetryClient.calculateCost(model, promptTokens, completionTokens))
-                    .latencyMs(latencyMs)
+                    .latencyMs(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
                     .errorClass(error != null ? error.getClass().getSimpleName() : null)
                     .errorMessage(error != null ? error.getMessage() : null)
+                    .promptHash(promptHash)
                     .build();
             
             telemetryClient.submit(payload);
@@ -223,6 +316,8 @@ public class langmeshWrapper {
         void pauseTelemetry();
         void resumeTelemetry();
         void flushTelemetry();
+        /** Drop this service's reference to the shared telemetry client */
+        void releaseTelemetry();
         boolean isProxyActive();
     }
 }
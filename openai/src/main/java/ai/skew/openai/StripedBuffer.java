@@ -0,0 +1,156 @@
+package ai.langmesh.openai;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-thread striped event buffer
+ *
+ * Each producing thread appends to its own single-producer stripe, so the
+ * submit path never writes to memory shared with other producers. Events are
+ * submitted from the telemetry worker threads, so there is one stripe per
+ * worker rather than per request thread. The flusher harvests every stripe
+ * on each tick, or early once a stripe is half full, starting from a
+ * rotating position so no stripe is starved when a drain is capped. Stripes
+ * whose thread has died are discarded once empty.
+ */
+final class StripedBuffer<E> implements TelemetryBuffer<E> {
+    private final int stripeCapacity;
+    private final CopyOnWriteArrayList<Stripe<E>> stripes = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Stripe<E>> localStripe = ThreadLocal.withInitial(this::register);
+    private int nextStripe;
+
+    StripedBuffer(int stripeCapacity) {
+        this.stripeCapacity = MpscRingBuffer.roundToPowerOfTwo(stripeCapacity);
+    }
+
+    @Override
+    public boolean offer(E element) {
+        return localStripe.get().offer(element);
+    }
+
+    @Override
+    public boolean isFillingUp() {
+        return localStripe.get().size() > stripeCapacity / 2;
+    }
+
+    @Override
+    public E poll() {
+        for (Stripe<E> stripe : stripes) {
+            E element = stripe.poll();
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int drainTo(List<? super E> target, int limit) {
+        Object[] snapshot = stripes.toArray();
+        int count = 0;
+        for (int i = 0; i < snapshot.length && count < limit; i++) {
+            @SuppressWarnings("unchecked")
+            Stripe<E> stripe = (Stripe<E>) snapshot[(nextStripe + i) % snapshot.length];
+            count += stripe.drainTo(target, limit - count);
+            if (stripe.isAbandoned()) {
+                stripes.remove(stripe);
+            }
+        }
+        nextStripe = snapshot.length == 0 ? 0 : (nextStripe + 1) % snapshot.length;
+        return count;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Stripe<E> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Stripe<E> stripe : stripes) {
+            if (stripe.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int stripeCount() {
+        return stripes.size();
+    }
+
+    private Stripe<E> register() {
+        Stripe<E> stripe = new Stripe<>(stripeCapacity, Thread.currentThread());
+        stripes.add(stripe);
+        return stripe;
+    }
+
+    /**
+     * Single-producer/single-consumer ring owned by one thread
+     */
+    private static final class Stripe<E> {
+        private final AtomicReferenceArray<E> slots;
+        private final int mask;
+        private final WeakReference<Thread> owner;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        Stripe(int capacity, Thread owner) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean offer(E element) {
+            long t = tail.get();
+            if (t - head.get() > mask) {
+                return false;
+            }
+            slots.lazySet((int) (t & mask), element);
+            tail.lazySet(t + 1);
+            return true;
+        }
+
+        E poll() {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+            int index = (int) (h & mask);
+            E element = slots.get(index);
+            slots.lazySet(index, null);
+            head.lazySet(h + 1);
+            return element;
+        }
+
+        int drainTo(List<? super E> target, int limit) {
+            long h = head.get();
+            long available = Math.min(tail.get() - h, limit);
+            for (long i = 0; i < available; i++) {
+                int index = (int) (h & mask);
+                target.add(slots.get(index));
+                slots.lazySet(index, null);
+                h++;
+            }
+            head.lazySet(h);
+            return (int) available;
+        }
+
+        int size() {
+            return (int) (tail.get() - head.get());
+        }
+
+        boolean isAbandoned() {
+            Thread thread = owner.get();
+            return (thread == null || !thread.isAlive()) && size() == 0;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ai.langmesh.openai;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Request body that streams a telemetry batch straight into the HTTP sink
+ *
+ * Each payload is written field by field with a JsonGenerator, so no
+ * intermediate Maps or JSON String are built for the batch. The stream is
+ * optionally compressed on the way out.
+ *
+ * In the {@link langmeshConfig.TelemetryConfig.BatchFormat#DICTIONARY} format
+ * the batch carries "format", a "context" object sent once, a "strings"
+ * table, and flat events that refer to table entries by index.
+ */
+final class TelemetryBatchBody extends RequestBody {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    /** Identifies the preset dictionary to the server, sent alongside Content-Encoding: deflate */
+    static final String DICTIONARY_ID = "telemetry-v1";
+    private static final byte[] DICTIONARY = loadDictionary();
+
+    /** Value of the "format" field of dictionary-encoded batches */
+    static final String DICTIONARY_FORMAT = "dictionary-v1";
+
+    private final List<TelemetryClient.TelemetryPayload> batch;
+    private final List<TelemetryRollup.Record> rollups;
+    private final JsonFactory jsonFactory;
+    private final byte[] json;
+    private final langmeshConfig.TelemetryConfig.Compression compression;
+    private final langmeshConfig.TelemetryConfig.BatchFormat format;
+    private OverheadController meter;
+
+    TelemetryBatchBody(List<TelemetryClient.TelemetryPayload> batch, List<TelemetryRollup.Record> rollups,
+                       JsonFactory jsonFactory, langmeshConfig.TelemetryConfig.Compression compression,
+                       langmeshConfig.TelemetryConfig.BatchFormat format) {
+        this.batch = batch;
+        this.rollups = rollups;
+        this.jsonFactory = jsonFactory;
+        this.json = null;
+        this.compression = compression;
+        this.format = format;
+    }
+
+    /**
+     * Body for a batch that was already serialized, e.g. one replayed from the spool
+     */
+    TelemetryBatchBody(byte[] json, langmeshConfig.TelemetryConfig.Compression compression) {
+        this.batch = null;
+        this.rollups = null;
+        this.jsonFactory = null;
+        this.json = json;
+        this.compression = compression;
+        this.format = null;
+    }
+
+    /**
+     * Serialize a batch to uncompressed JSON bytes
+     */
+    static byte[] toJson(List<TelemetryClient.TelemetryPayload> batch, List<TelemetryRollup.Record> rollups,
+                         JsonFactory jsonFactory, langmeshConfig.TelemetryConfig.BatchFormat format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * (batch.size() + rollups.size()));
+        new TelemetryBatchBody(batch, rollups, jsonFactory, langmeshConfig.TelemetryConfig.Compression.NONE, format)
+                .writeJson(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Report serialization CPU time and bytes written to the given controller
+     */
+    TelemetryBatchBody meter(OverheadController meter) {
+        this.meter = meter;
+        return this;
+    }
+
+    /**
+     * Content-Encoding header value for the given compression, or null for none
+     */
+    static String contentEncoding(langmeshConfig.TelemetryConfig.Compression compression) {
+        switch (compression) {
+            case GZIP:
+                return "gzip";
+            case DEFLATE_DICTIONARY:
+                return "deflate";
+            case NONE:
+            default:
+                return null;
+        }
+    }
+
+    static byte[] dictionary() {
+        return DICTIONARY.clone();
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (meter == null) {
+            write(sink);
+            return;
+        }
+        long cpuStart = OverheadController.threadCpuNanos();
+        OverheadController target = meter;
+        BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                target.recordBytes(byteCount);
+                super.write(source, byteCount);
+            }
+        });
+        try {
+            write(counting);
+            // The gzip path closes the sink once the trailer is written
+            if (counting.isOpen()) {
+                counting.emit();
+            }
+        } finally {
+            target.recordCpu(OverheadController.threadCpuNanos() - cpuStart);
+        }
+    }
+
+    private void write(BufferedSink sink) throws IOException {
+        switch (compression) {
+            case GZIP:
+                BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+                writeJson(gzipSink.outputStream());
+                gzipSink.close();
+                break;
+            case DEFLATE_DICTIONARY:
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                try {
+                    deflater.setDictionary(DICTIONARY);
+                    DeflaterOutputStream out = new DeflaterOutputStream(sink.outputStream(), deflater, 8192);
+                    writeJson(out);
+                    out.finish();
+                    out.flush();
+                } finally {
+                    deflater.end();
+                }
+                break;
+            case NONE:
+            default:
+                writeJson(sink.outputStream());
+                break;
+        }
+    }
+
+    private void writeJson(OutputStream out) throws IOException {
+        if (json != null) {
+            out.write(json);
+            return;
+        }
+        try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.writeStartObject();
+            if (format == langmeshConfig.TelemetryConfig.BatchFormat.DICTIONARY) {
+                writeDictionaryEvents(gen);
+            } else {
+                gen.writeArrayFieldStart("events");
+                for (TelemetryClient.TelemetryPayload payload : batch) {
+                    payload.writeTo(gen);
+                }
+                gen.writeEndArray();
+            }
+            if (!rollups.isEmpty()) {
+                gen.writeArrayFieldStart("rollups");
+                for (TelemetryRollup.Record rollup : rollups) {
+                    rollup.writeTo(gen);
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private void writeDictionaryEvents(JsonGenerator gen) throws IOException {
+        StringTable strings = new StringTable();
+        for (TelemetryClient.TelemetryPayload payload : batch) {
+            payload.internStrings(strings);
+        }
+        
+        gen.writeStringField("format", DICTIONARY_FORMAT);
+        gen.writeObjectFieldStart("context");
+        gen.writeStringField("sdkLanguage", TelemetryClient.SDK_LANGUAGE);
+        gen.writeStringField("sdkVersion", TelemetryClient.SDK_VERSION);
+        gen.writeStringField("openaiClientVersion", "unknown");
+        gen.writeEndObject();
+        gen.writeArrayFieldStart("strings");
+        for (String value : strings.values) {
+            gen.writeString(value);
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("events");
+        for (TelemetryClient.TelemetryPayload payload : batch) {
+            payload.writeEncodedTo(gen, strings);
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Distinct strings of one batch, in first-seen order
+     */
+    static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String value) {
+            if (value != null && !indexes.containsKey(value)) {
+                indexes.put(value, values.size());
+                values.add(value);
+            }
+        }
+
+        /**
+         * Index of an added string, or -1 for null
+         */
+        int indexOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indexes.get(value);
+            return index != null ? index : -1;
+        }
+    }
+
+    private static byte[] loadDictionary() {
+        try (InputStream in = TelemetryBatchBody.class.getResourceAsStream(DICTIONARY_ID + ".dict")) {
+            if (in == null) {
+                return new byte[0];
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ai.langmesh.openai;
+
+import java.util.List;
+
+/**
+ * Event buffer between request threads and the telemetry flusher
+ *
+ * Any number of threads may offer; polling and draining are done by one
+ * consumer at a time.
+ */
+interface TelemetryBuffer<E> {
+
+    /**
+     * Add an element - returns false without blocking when there is no room
+     */
+    boolean offer(E element);
+
+    /**
+     * Remove one of the oldest buffered elements, or null if none is available
+     */
+    E poll();
+
+    /**
+     * Remove the oldest element from the partition {@code element} belongs to,
+     * to make room for it once that partition is full. Null when the buffer
+     * is not partitioned or the partition is empty.
+     */
+    default E pollPartitionOf(E element) {
+        return null;
+    }
+
+    /**
+     * Whether the calling producer's share of the buffer is filling up and
+     * should be drained ahead of the flush timer
+     */
+    default boolean isFillingUp() {
+        return false;
+    }
+
+    /**
+     * Move up to {@code limit} elements into {@code target}
+     *
+     * @return number of elements moved
+     */
+    int drainTo(List<? super E> target, int limit);
+
+    int size();
+
+    boolean isEmpty();
+}
@@ -1,53 +1,196 @@
 package ai.langmesh.openai;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.*;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * langmesh Telemetry Client
  * 
  * Async, non-blocking telemetry submission
  */
-public class TelemetryClient {
-    private static final String SDK_VERSION = "1.0.0";
-    private static final String SDK_LANGUAGE = "java";
+public class TelemetryClient implements AutoCloseable {
+    static final String SDK_VERSION = "1.0.0";
+    static final String SDK_LANGUAGE = "java";
+    private static final long SPOOL_REPLAY_INITIAL_BACKOFF_MS = 1000;
+    private static final long SPOOL_REPLAY_MAX_BACKOFF_MS = 60_000;
+    private static final double RATE_SMOOTHING = 0.3;
+    private static final long SAMPLE_SCALE = 1L << 53;
+    private static final long OVERHEAD_CONTROL_INTERVAL_MS = 1000;
+    private static final int PRIORITY_BUFFER_CAPACITY = 1024;
+    // Own upload slots, so urgent events never queue behind bulk batches
+    private static final int PRIORITY_MAX_IN_FLIGHT = 2;
+    // Extra upload slots opened for the final drain so remaining batches go out in parallel
+    private static final int SHUTDOWN_UPLOAD_PARALLELISM = 16;
+    
+    // Shared by every client in the process: one connection pool, one dispatcher
+    private static final OkHttpClient SHARED_HTTP_CLIENT = new OkHttpClient.Builder()
+            .dispatcher(createDispatcher())
+            .build();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // Clients handed out by acquire(), keyed by API key and config; guarded by itself
+    private static final Map<SharedKey, TelemetryClient> SHARED_CLIENTS = new HashMap<>();
     
     private final String apiKey;
     private final langmeshConfig.TelemetryConfig config;
     private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
-    private final List<TelemetryPayload> buffer;
+    private final TelemetryBuffer<TelemetryPayload> buffer;
+    private final boolean flushOnBatchSize;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final LongAdder pendingEvents = new LongAdder();
+    private final LongAdder pendingBytes = new LongAdder();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private final AtomicBoolean flushTimerArmed = new AtomicBoolean();
+    private volatile int effectiveBatchSize;
+    private volatile double arrivalRatePerSec;
+    private long lastRateSampleNanos = System.nanoTime();
+    private long lastRateSampleAccepted;
     private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor workers;
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final TelemetrySpool spool;
+    private final CircuitBreaker circuitBreaker;
+    private final Semaphore inFlightUploads;
+    private final TelemetryRollup rollup;
+    private final AtomicBoolean rollupTimerArmed = new AtomicBoolean();
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+    private volatile long replayBackoffMs = SPOOL_REPLAY_INITIAL_BACKOFF_MS;
     private volatile boolean paused = false;
+    private final LongAdder[] sampleReasons = newCounters(SampleReason.values().length);
+    // sampleRate scaled to [0, SAMPLE_SCALE], compared against 53 hash bits
+    private volatile long sampleThreshold;
+    private final OverheadController overhead;
+    private final MpscRingBuffer<TelemetryPayload> priorityBuffer;
+    private final ReentrantLock priorityDrainLock = new ReentrantLock();
+    private final AtomicBoolean priorityFlushPending = new AtomicBoolean();
+    private final Semaphore priorityUploads = new Semaphore(PRIORITY_MAX_IN_FLIGHT);
+    private final ErrorCoalescer errorCoalescer;
+    private final AtomicBoolean coalesceTimerArmed = new AtomicBoolean();
+    private final LongAdder coalescedErrors = new LongAdder();
+    private SharedKey sharedKey;
+    private int references = 1;
+    private final AtomicBoolean shutDown = new AtomicBoolean();
+    private volatile boolean draining = false;
+    private final Thread shutdownHook;
+    private final boolean watchingPricing;
 
     public TelemetryClient(String apiKey, langmeshConfig.TelemetryConfig config) {
         this.apiKey = apiKey;
         this.config = config;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.SECONDS)
-                .writeTimeout(5, TimeUnit.SECONDS)
-                .readTimeout(5, TimeUnit.SECONDS)
+        this.watchingPricing = watchPricing(config);
+        this.httpClient = SHARED_HTTP_CLIENT.newBuilder()
+                .connectTimeout(config.getUploadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getUploadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getUploadTimeoutMs(), TimeUnit.MILLISECONDS)
                 .build();
-        this.objectMapper = new ObjectMapper();
-        this.buffer = Collections.synchronizedList(new ArrayList<>());
-        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "langmesh-telemetry");
-            t.setDaemon(true);
-            return t;
-        });
+        this.buffer = createBuffer(config);
+        this.flushOnBatchSize = config.getIngestStrategy() != langmeshConfig.TelemetryConfig.IngestStrategy.STRIPED;
+        this.effectiveBatchSize = Math.max(1, config.getBatchSize());
+        this.scheduler = createScheduler();
+        this.workers = createWorkerPool(config, rejectedTasks);
+        this.spool = openSpool(apiKey, config);
+        this.circuitBreaker = new CircuitBreaker(config.getCircuitFailureThreshold(), config.getCircuitOpenMs());
+        this.inFlightUploads = new Semaphore(config.getMaxInFlightUploads());
+        this.rollup = config.isAggregation() ? new TelemetryRollup() : null;
+        this.sampleThreshold = toSampleThreshold(config.getSampleRate());
+        this.priorityBuffer = new MpscRingBuffer<>(Math.min(config.getBufferCapacity(), PRIORITY_BUFFER_CAPACITY));
+        this.errorCoalescer = config.isErrorCoalescing() ? new ErrorCoalescer() : null;
+        this.overhead = config.isAdaptiveSampling()
+                ? new OverheadController(config.getOverheadCpuPercent(), config.getOverheadBytesPerSecond(),
+                        config.getSampleRate(), config.getMinSampleRate())
+                : null;
+        this.shutdownHook = config.isRegisterShutdownHook() ? registerShutdownHook(this) : null;
         
         if (config.isEnabled()) {
-            startFlushTimer();
+            if (spool != null && !spool.isEmpty()) {
+                scheduleReplay(config.getFlushIntervalMs());
+            }
+        }
+        if (overhead != null && config.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::adjustSampleRate,
+                    OVERHEAD_CONTROL_INTERVAL_MS, OVERHEAD_CONTROL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * One control step: fold the last interval's overhead into the sample rate
+     */
+    void adjustSampleRate() {
+        double occupancy = (double) buffer.size() / config.getBufferCapacity();
+        sampleThreshold = toSampleThreshold(overhead.adjust(occupancy));
+    }
+
+    private static long toSampleThreshold(double rate) {
+        return (long) (Math.max(0, Math.min(1, rate)) * SAMPLE_SCALE);
+    }
+
+    /**
+     * Sample rate currently applied - the configured rate unless an overhead budget lowered it
+     */
+    public double getEffectiveSampleRate() {
+        return overhead != null ? overhead.rate() : config.getSampleRate();
+    }
+
+    /**
+     * Start watching the configured pricing file. Only enabled clients watch:
+     * prices only feed telemetry cost estimates, and a disabled client does no
+     * background work. A file conflicting with another client's is logged and
+     * ignored.
+     */
+    private static boolean watchPricing(langmeshConfig.TelemetryConfig config) {
+        return config.isEnabled() && config.getPricingFile() != null
+                && ModelPricing.watch(config.getPricingFile(), config.getPricingReloadIntervalMs());
+    }
+
+    /**
+     * Get the process-wide client for this API key and telemetry config,
+     * creating it on first use. Every wrapped service with the same key and an
+     * equal config reuses its buffer, flusher and HTTP connections; a different
+     * config gets a client of its own. Pair each call with {@link #release()}.
+     */
+    public static TelemetryClient acquire(String apiKey, langmeshConfig.TelemetryConfig config) {
+        SharedKey key = new SharedKey(apiKey, config);
+        synchronized (SHARED_CLIENTS) {
+            TelemetryClient client = SHARED_CLIENTS.get(key);
+            if (client != null) {
+                client.references++;
+                return client;
+            }
+            client = new TelemetryClient(apiKey, config);
+            client.sharedKey = key;
+            SHARED_CLIENTS.put(key, client);
+            return client;
         }
     }
 
+    /**
+     * Drop one reference; the last one flushes and shuts the client down
+     */
+    public void release() {
+        synchronized (SHARED_CLIENTS) {
+            if (references <= 0 || --references > 0) {
+                return;
+            }
+            if (sharedKey != null) {
+                SHARED_CLIENTS.remove(sharedKey, this);
+            }
+        }
+        shutdown();
+    }
+
     /**
      * Submit telemetry - never blocks, never throws
      */
@@ -56,79 +199,761 @@ public class TelemetryClient {
             return;
         }
         
+        if (rollup != null) {
+            // Rollups count every call; only errors continue as individual events
+            rollup.record(payload);
+            armRollupTimer();
+            if (payload.getErrorClass() == null) {
+                return;
+            }
+        }
+        
+        if (errorCoalescer != null && payload.getErrorClass() != null) {
+            armCoalesceTimer();
+            if (errorCoalescer.absorb(payload)) {
+                coalescedErrors.increment();
+                return;
+            }
+        }
+        
         // Apply sampling
-        if (Math.random() > config.getSampleRate()) {
+        long threshold = sampleThreshold;
+        boolean drawn;
+        if (config.isTailSampling()) {
+            SampleReason reason = tailSample(payload, threshold);
+            sampleReasons[reason.ordinal()].increment();
+            if (reason == SampleReason.DROPPED) {
+                return;
+            }
+            drawn = reason == SampleReason.SAMPLED;
+        } else if (!isSampled(payload.getRequestId(), threshold)) {
             return;
+        } else {
+            drawn = true;
+        }
+        if (drawn && overhead != null) {
+            // Only an adaptive rate varies per event; a fixed one is known from config
+            payload.sampleRate = (double) threshold / SAMPLE_SCALE;
         }
         
-        buffer.add(payload);
+        buffer(payload);
+    }
+
+    /**
+     * Queue an event that passed sampling, on the priority lane or the regular buffer
+     */
+    private void buffer(TelemetryPayload payload) {
+        if (isPriority(payload) && priorityBuffer.offer(payload)) {
+            acceptedEvents.increment();
+            flushPriorityAsync();
+            return;
+        }
         
-        if (buffer.size() >= config.getBatchSize()) {
+        int bytes = payload.estimatedBytes();
+        if (!admit(bytes) || !offer(payload)) {
+            // Over the cap - drop rather than block the caller
+            droppedEvents.increment();
+            return;
+        }
+        pendingEvents.increment();
+        pendingBytes.add(bytes);
+        acceptedEvents.increment();
+        
+        if (flushOnBatchSize && (pendingEvents.sum() >= effectiveBatchSize
+                || pendingBytes.sum() >= config.getTargetBatchBytes()) || buffer.isFillingUp()) {
             flushAsync();
+        } else {
+            armFlushTimer();
         }
     }
 
     /**
-     * Flush buffered telemetry synchronously
+     * Schedule an age-based flush for the oldest buffered event. The timer is
+     * only armed while something is buffered, so an idle client does no work.
      */
-    public void flush() {
-        if (buffer.isEmpty()) {
+    private void armFlushTimer() {
+        if (flushTimerArmed.get() || !flushTimerArmed.compareAndSet(false, true)) {
             return;
         }
+        try {
+            scheduler.schedule(() -> {
+                flushTimerArmed.set(false);
+                flush();
+            }, config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flushTimerArmed.set(false);
+        }
+    }
+
+    /**
+     * Apply the overflow policy for an incoming event of the given size
+     */
+    private boolean admit(int bytes) {
+        long eventCap = config.getBufferCapacity();
+        long byteCap = config.getMaxBufferedBytes();
+        long events = pendingEvents.sum();
+        long size = pendingBytes.sum();
+        boolean full = events >= eventCap || size + bytes > byteCap;
         
-        List<TelemetryPayload> batch;
-        synchronized (buffer) {
-            batch = new ArrayList<>(buffer);
-            buffer.clear();
+        switch (config.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                return !full || evictOldest(bytes);
+            case SAMPLE_DOWN:
+                if (full) {
+                    return false;
+                }
+                double occupancy = Math.max((double) events / eventCap, (double) size / byteCap);
+                return occupancy < 0.5 || ThreadLocalRandom.current().nextDouble() < 2 * (1 - occupancy);
+            case DROP_NEWEST:
+            default:
+                return !full;
+        }
+    }
+
+    /**
+     * Evict oldest events until one of {@code bytes} fits. Gives up rather than
+     * wait when a flush is already draining the buffer.
+     */
+    private boolean evictOldest(int bytes) {
+        if (!drainLock.tryLock()) {
+            return false;
+        }
+        try {
+            while (pendingEvents.sum() >= config.getBufferCapacity()
+                    || pendingBytes.sum() + bytes > config.getMaxBufferedBytes()) {
+                TelemetryPayload oldest = buffer.poll();
+                if (oldest == null) {
+                    return false;
+                }
+                release(oldest);
+                droppedEvents.increment();
+            }
+            return true;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Add an admitted event. Under DROP_OLDEST a full partition, such as a
+     * tenant at its quota, gives up its own oldest event to make room.
+     */
+    private boolean offer(TelemetryPayload payload) {
+        if (buffer.offer(payload)) {
+            return true;
+        }
+        if (config.getOverflowPolicy() != langmeshConfig.TelemetryConfig.OverflowPolicy.DROP_OLDEST
+                || !drainLock.tryLock()) {
+            return false;
+        }
+        try {
+            TelemetryPayload oldest = buffer.pollPartitionOf(payload);
+            if (oldest == null) {
+                return false;
+            }
+            release(oldest);
+            droppedEvents.increment();
+        } finally {
+            drainLock.unlock();
+        }
+        return buffer.offer(payload);
+    }
+
+    private void release(TelemetryPayload payload) {
+        pendingEvents.decrement();
+        pendingBytes.add(-payload.estimatedBytes());
+    }
+
+    /**
+     * Run telemetry work on the bounded worker pool - never blocks, never throws.
+     * Work is dropped and counted when the pool's queue is full.
+     */
+    public void dispatch(Runnable task) {
+        if (!config.isEnabled() || paused) {
+            return;
         }
         
         try {
-            sendBatch(batch);
-        } catch (Exception e) {
-            // Silent drop - telemetry must never affect user
+            workers.execute(overhead != null ? metered(task) : task);
+        } catch (RuntimeException e) {
+            // Pool already shut down
+            rejectedTasks.increment();
         }
     }
 
     /**
-     * Flush in background thread
+     * Wrap a task so its CPU time counts against the overhead budget
      */
-    public void flushAsync() {
-        scheduler.submit(this::flush);
+    private Runnable metered(Runnable task) {
+        return () -> {
+            long start = OverheadController.threadCpuNanos();
+            try {
+                task.run();
+            } finally {
+                overhead.recordCpu(OverheadController.threadCpuNanos() - start);
+            }
+        };
+    }
+
+    /**
+     * Number of telemetry tasks dropped because the worker pool was saturated
+     */
+    public long getRejectedTaskCount() {
+        return rejectedTasks.sum();
+    }
+
+    /**
+     * Events admitted to the buffer
+     */
+    public long getAcceptedCount() {
+        return acceptedEvents.sum();
+    }
+
+    /**
+     * Events discarded by the overflow policy
+     */
+    public long getDroppedCount() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Events delivered to the telemetry endpoint
+     */
+    public long getSentCount() {
+        return sentEvents.sum();
+    }
+
+    /**
+     * Events whose upload failed; they may still be delivered from the spool
+     */
+    public long getFailedCount() {
+        return failedEvents.sum();
+    }
+
+    /**
+     * Flush buffered telemetry - serializes batches and hands them to the HTTP
+     * client without waiting for responses. Stops early when the in-flight
+     * upload cap is reached; the rest stays buffered for the next flush.
+     */
+    public void flush() {
+        updateBatchSize();
+        if (holdBack()) {
+            // Endpoint unhealthy - leave events buffered under the overflow policy
+            if (!buffer.isEmpty() || !priorityBuffer.isEmpty()) {
+                armFlushTimer();
+            }
+            return;
+        }
+        flushPriority();
+        int remaining = buffer.size();
+        // Re-checked per batch: once one batch has claimed the half-open probe, the rest wait
+        while (remaining > 0 && !holdBack() && inFlightUploads.tryAcquire()) {
+            List<TelemetryPayload> batch = drainBatch();
+            if (batch.isEmpty()) {
+                inFlightUploads.release();
+                break;
+            }
+            remaining -= batch.size();
+            attemptUpload(batch, Collections.emptyList(), 0, inFlightUploads);
+        }
+        if (!buffer.isEmpty()) {
+            // Arrived while we were uploading, or waiting on the in-flight cap
+            armFlushTimer();
+        }
+    }
+
+    /**
+     * Whether to leave events buffered: the circuit rejects uploads and there
+     * is no spool to keep them in
+     */
+    private boolean holdBack() {
+        return spool == null && circuitBreaker.isOpen();
     }
 
-    private void sendBatch(List<TelemetryPayload> batch) throws IOException {
-        Map<String, Object> body = new HashMap<>();
-        List<Map<String, Object>> events = new ArrayList<>();
+    private void armCoalesceTimer() {
+        if (coalesceTimerArmed.get() || !coalesceTimerArmed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::emitCoalescedErrors, config.getErrorCoalesceWindowMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            coalesceTimerArmed.set(false);
+        }
+    }
+
+    /**
+     * Close the coalescing window and queue one event per repeated error.
+     * These stand for calls that already passed the client, so they skip sampling.
+     */
+    private void emitCoalescedErrors() {
+        coalesceTimerArmed.set(false);
+        for (TelemetryPayload event : errorCoalescer.drain()) {
+            buffer(event);
+        }
+        if (!errorCoalescer.isIdle()) {
+            armCoalesceTimer();
+        }
+    }
+
+    /**
+     * Repeated errors folded into coalesced events instead of sent individually
+     */
+    public long getCoalescedErrorCount() {
+        return coalescedErrors.sum();
+    }
+
+    private void armRollupTimer() {
+        if (rollupTimerArmed.get() || !rollupTimerArmed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::rotateRollup, config.getAggregationWindowMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            rollupTimerArmed.set(false);
+        }
+    }
+
+    /**
+     * Close the current aggregation window and ship the previous one
+     */
+    private void rotateRollup() {
+        rollupTimerArmed.set(false);
+        uploadRollups(rollup.rotate());
+        if (!rollup.isIdle()) {
+            armRollupTimer();
+        }
+    }
+
+    private void uploadRollups(List<TelemetryRollup.Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (!inFlightUploads.tryAcquire()) {
+            // Rollups cannot be re-buffered; wait for a free upload slot
+            try {
+                scheduler.schedule(() -> uploadRollups(records), config.getRetryInitialBackoffMs(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                spool(Collections.emptyList(), records);
+            }
+            return;
+        }
+        attemptUpload(Collections.emptyList(), records, 0, inFlightUploads);
+    }
+
+    private boolean isPriority(TelemetryPayload payload) {
+        if (config.isPriorityErrors() && payload.getErrorClass() != null) {
+            return true;
+        }
+        double costThreshold = config.getPriorityCostThresholdUsd();
+        return costThreshold > 0 && payload.getCostEstimateUsd() >= costThreshold;
+    }
+
+    /**
+     * Upload the priority lane now - at most one such task is queued at a time
+     */
+    private void flushPriorityAsync() {
+        if (!priorityFlushPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                priorityFlushPending.set(false);
+                flushPriority();
+            });
+        } catch (RejectedExecutionException e) {
+            priorityFlushPending.set(false);
+        }
+    }
+
+    /**
+     * Drain the priority lane in small batches on its own upload slots. What
+     * does not fit waits for a slot to free up, or for the next regular flush
+     * while the circuit is open.
+     */
+    private void flushPriority() {
+        if (holdBack()) {
+            armFlushTimer();
+            return;
+        }
+        while (!priorityBuffer.isEmpty() && !holdBack() && priorityUploads.tryAcquire()) {
+            List<TelemetryPayload> batch = new ArrayList<>(Math.min(config.getPriorityBatchSize(), priorityBuffer.size()));
+            priorityDrainLock.lock();
+            try {
+                priorityBuffer.drainTo(batch, config.getPriorityBatchSize());
+            } finally {
+                priorityDrainLock.unlock();
+            }
+            if (batch.isEmpty()) {
+                priorityUploads.release();
+                break;
+            }
+            attemptUpload(batch, Collections.emptyList(), 0, priorityUploads);
+        }
+    }
+
+    private void releaseUpload(Semaphore permits) {
+        permits.release();
+        if (permits == priorityUploads && !priorityBuffer.isEmpty()) {
+            flushPriorityAsync();
+        }
+    }
+
+    /**
+     * Take the next batch, sized by the adaptive batch size and the byte budget
+     */
+    private List<TelemetryPayload> drainBatch() {
+        int limit = effectiveBatchSize;
+        long events = pendingEvents.sum();
+        if (events > 0) {
+            long averageBytes = Math.max(1, pendingBytes.sum() / events);
+            limit = (int) Math.max(1, Math.min(limit, config.getTargetBatchBytes() / averageBytes));
+        }
         
+        List<TelemetryPayload> batch = new ArrayList<>(Math.min(limit, Math.max(1, buffer.size())));
+        drainLock.lock();
+        try {
+            buffer.drainTo(batch, limit);
+        } finally {
+            drainLock.unlock();
+        }
         for (TelemetryPayload payload : batch) {
-            events.add(payload.toMap());
+            release(payload);
         }
+        return batch;
+    }
+
+    /**
+     * Start one asynchronous upload attempt; the caller holds one of the
+     * given upload permits, which is released once the batch is delivered or
+     * given up.
+     * Retryable failures are rescheduled with jittered exponential backoff;
+     * batches that run out of retries or meet an open circuit go to the
+     * spool, or are dropped when spooling is off. Batches the endpoint
+     * rejects outright are counted as failed and dropped.
+     */
+    private void attemptUpload(List<TelemetryPayload> batch, List<TelemetryRollup.Record> rollups, int attempt,
+                               Semaphore permits) {
+        if (!circuitBreaker.allowRequest()) {
+            giveUp(batch, rollups, permits);
+            return;
+        }
+        enqueue(new TelemetryBatchBody(batch, rollups, OBJECT_MAPPER.getFactory(), config.getCompression(),
+                        config.getBatchFormat()).meter(overhead),
+                () -> {
+                    sentEvents.add(batch.size());
+                    releaseUpload(permits);
+                    if (circuitBreaker.onSuccess()) {
+                        // Probe succeeded - send what was held back during the outage
+                        flushAsync();
+                    }
+                },
+                () -> {
+                    circuitBreaker.onFailure();
+                    if (attempt >= config.getMaxRetries() || draining) {
+                        giveUp(batch, rollups, permits);
+                        return;
+                    }
+                    try {
+                        scheduler.schedule(() -> attemptUpload(batch, rollups, attempt + 1, permits),
+                                retryDelayMs(attempt), TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        giveUp(batch, rollups, permits);
+                    }
+                },
+                () -> {
+                    // Neither retried nor spooled - the same body would be refused again
+                    circuitBreaker.onRejected();
+                    failedEvents.add(batch.size());
+                    releaseUpload(permits);
+                });
+    }
+
+    private void giveUp(List<TelemetryPayload> batch, List<TelemetryRollup.Record> rollups, Semaphore permits) {
+        failedEvents.add(batch.size());
+        spool(batch, rollups);
+        releaseUpload(permits);
+    }
+
+    /**
+     * Full-jitter exponential backoff for the given zero-based retry
+     */
+    long retryDelayMs(int attempt) {
+        long ceiling = config.getRetryInitialBackoffMs() << Math.min(attempt, 30);
+        ceiling = Math.min(config.getRetryMaxBackoffMs(), Math.max(ceiling, config.getRetryInitialBackoffMs()));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Grow the batch size with the arrival rate so one upload carries roughly
+     * one flush interval's worth of events, between batchSize and maxBatchSize
+     */
+    private synchronized void updateBatchSize() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRateSampleNanos;
+        if (elapsed < TimeUnit.MILLISECONDS.toNanos(100)) {
+            return;
+        }
+        long accepted = acceptedEvents.sum();
+        double rate = (accepted - lastRateSampleAccepted) * 1e9 / elapsed;
+        lastRateSampleNanos = now;
+        lastRateSampleAccepted = accepted;
         
-        body.put("events", events);
-        
-        String json = objectMapper.writeValueAsString(body);
-        
-        Request request = new Request.Builder()
+        arrivalRatePerSec = RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * arrivalRatePerSec;
+        long target = (long) (arrivalRatePerSec * config.getFlushIntervalMs() / 1000.0);
+        effectiveBatchSize = (int) Math.max(config.getBatchSize(), Math.min(config.getMaxBatchSize(), target));
+    }
+
+    /**
+     * Events currently waiting in the buffer
+     */
+    int getBufferedCount() {
+        return buffer.size() + priorityBuffer.size();
+    }
+
+    /**
+     * Current adaptive batch size
+     */
+    int getEffectiveBatchSize() {
+        return effectiveBatchSize;
+    }
+
+    /**
+     * Flush in background thread - at most one flush is queued at a time
+     */
+    public void flushAsync() {
+        if (!flushPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                flushPending.set(false);
+                flush();
+            });
+        } catch (RejectedExecutionException e) {
+            flushPending.set(false);
+        }
+    }
+
+    /**
+     * Post a body on OkHttp's dispatcher. Exactly one of the handlers runs,
+     * on an OkHttp thread or inline if the call cannot be enqueued: onSuccess
+     * for 2xx, onFailure for I/O errors and retryable statuses, onRejected for
+     * any other status - the body itself was refused and resending it won't help.
+     */
+    private void enqueue(TelemetryBatchBody body, Runnable onSuccess, Runnable onFailure, Runnable onRejected) {
+        try {
+            httpClient.newCall(buildRequest(body)).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    onFailure.run();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    if (response.isSuccessful()) {
+                        onSuccess.run();
+                    } else if (isRetryable(response.code())) {
+                        onFailure.run();
+                    } else {
+                        onRejected.run();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            onFailure.run();
+        }
+    }
+
+    private Request buildRequest(TelemetryBatchBody body) {
+        langmeshConfig.TelemetryConfig.Compression compression = config.getCompression();
+        Request.Builder builder = new Request.Builder()
                 .url(config.getEndpoint())
                 .addHeader("Content-Type", "application/json")
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("X-langmesh-SDK-Version", SDK_VERSION)
                 .addHeader("X-langmesh-SDK-Language", SDK_LANGUAGE)
-                .post(RequestBody.create(json, MediaType.parse("application/json")))
-                .build();
+                .post(body);
         
-        try (Response response = httpClient.newCall(request).execute()) {
-            // Just consume the response
+        String contentEncoding = TelemetryBatchBody.contentEncoding(compression);
+        if (contentEncoding != null) {
+            builder.addHeader("Content-Encoding", contentEncoding);
         }
+        if (compression == langmeshConfig.TelemetryConfig.Compression.DEFLATE_DICTIONARY) {
+            builder.addHeader("X-langmesh-Dictionary", TelemetryBatchBody.DICTIONARY_ID);
+        }
+        return builder.build();
     }
 
-    private void startFlushTimer() {
-        scheduler.scheduleAtFixedRate(
-                this::flush,
-                config.getFlushIntervalMs(),
-                config.getFlushIntervalMs(),
-                TimeUnit.MILLISECONDS
-        );
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Keep a failed batch on disk for replay - silent drop when spooling is off
+     */
+    private void spool(List<TelemetryPayload> batch, List<TelemetryRollup.Record> rollups) {
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.append(TelemetryBatchBody.toJson(batch, rollups, OBJECT_MAPPER.getFactory(), config.getBatchFormat()));
+            scheduleReplay(replayBackoffMs);
+        } catch (Exception e) {
+            // Silent drop - telemetry must never affect user
+        }
+    }
+
+    /**
+     * Start the replay chain unless one is already running
+     */
+    private void scheduleReplay(long delayMs) {
+        if (spool == null || !replayScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        continueReplay(delayMs);
+    }
+
+    private void continueReplay(long delayMs) {
+        try {
+            scheduler.schedule(this::replaySpool, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            replayScheduled.set(false);
+        }
+    }
+
+    /**
+     * Upload spooled batches oldest-first, one at a time, backing off while
+     * the endpoint is down
+     */
+    private void replaySpool() {
+        TelemetrySpool.Entry entry = peekSpool();
+        if (entry == null) {
+            replayBackoffMs = SPOOL_REPLAY_INITIAL_BACKOFF_MS;
+            replayScheduled.set(false);
+            if (!spool.isEmpty()) {
+                // Spooled after we looked
+                scheduleReplay(0);
+            }
+            return;
+        }
+        if (!inFlightUploads.tryAcquire()) {
+            continueReplay(config.getRetryInitialBackoffMs());
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            inFlightUploads.release();
+            continueReplay(Math.max(replayBackoffMs, config.getCircuitOpenMs()));
+            return;
+        }
+        enqueue(new TelemetryBatchBody(entry.data, config.getCompression()).meter(overhead),
+                () -> {
+                    circuitBreaker.onSuccess();
+                    spool.commit(entry);
+                    inFlightUploads.release();
+                    continueReplay(0);
+                },
+                () -> {
+                    circuitBreaker.onFailure();
+                    inFlightUploads.release();
+                    long delay = replayBackoffMs;
+                    replayBackoffMs = Math.min(SPOOL_REPLAY_MAX_BACKOFF_MS, delay * 2);
+                    continueReplay(delay);
+                },
+                () -> {
+                    // Poison record - drop it rather than replay it forever
+                    circuitBreaker.onRejected();
+                    spool.commit(entry);
+                    inFlightUploads.release();
+                    continueReplay(0);
+                });
+    }
+
+    private TelemetrySpool.Entry peekSpool() {
+        try {
+            return spool.peek();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether a call should be measured at all. Cheap enough to ask before
+     * building anything; with aggregation on every call is recorded, since
+     * rollups count unsampled calls too.
+     */
+    public boolean shouldRecord(String requestId) {
+        return config.isEnabled() && !paused
+                && (rollup != null || config.isTailSampling() || isSampled(requestId));
+    }
+
+    /**
+     * Tail-sampling decision for a completed call - the first rule that matches
+     */
+    private SampleReason tailSample(TelemetryPayload payload, long threshold) {
+        if (payload.getErrorClass() != null) {
+            return SampleReason.ERROR;
+        }
+        long latencyThreshold = config.getTailLatencyThresholdMs();
+        if (latencyThreshold > 0 && payload.getLatencyMs() >= latencyThreshold) {
+            return SampleReason.SLOW;
+        }
+        double costThreshold = config.getTailCostThresholdUsd();
+        if (costThreshold > 0 && payload.getCostEstimateUsd() >= costThreshold) {
+            return SampleReason.COSTLY;
+        }
+        return isSampled(payload.getRequestId(), threshold) ? SampleReason.SAMPLED : SampleReason.DROPPED;
+    }
+
+    /**
+     * Events tail sampling kept (or dropped) for the given rule
+     */
+    public long getTailSampleCount(SampleReason reason) {
+        return sampleReasons[reason.ordinal()].sum();
+    }
+
+    /**
+     * Sampling decision for a request. Derived from a hash of the request ID,
+     * so every event of one request is kept or dropped together; requests
+     * without an ID fall back to ThreadLocalRandom.
+     */
+    public boolean isSampled(String requestId) {
+        return isSampled(requestId, sampleThreshold);
+    }
+
+    private static boolean isSampled(String requestId, long threshold) {
+        if (threshold >= SAMPLE_SCALE) {
+            return true;
+        }
+        if (threshold <= 0) {
+            return false;
+        }
+        long draw = requestId != null
+                ? sampleHash(requestId) >>> 11
+                : ThreadLocalRandom.current().nextLong(SAMPLE_SCALE);
+        return draw < threshold;
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars, finished with the MurmurHash3 fmix64
+     * avalanche so the high bits are well mixed
+     */
+    static long sampleHash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     public void pause() {
@@ -139,62 +964,325 @@ public class TelemetryClient {
         paused = false;
     }
 
+    /**
+     * Same as {@link #release()}: shuts down a client that is not shared
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * Drain and upload remaining telemetry, then stop. Bounded by the
+     * configured shutdown deadline; safe to call more than once.
+     */
     public void shutdown() {
-        flush();
-        scheduler.shutdown();
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getShutdownTimeoutMs());
+        
+        // Let queued payload builds reach the buffer first
+        workers.shutdown();
+        try {
+            workers.awaitTermination(remainingMs(deadline) / 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Final drain: no retries, and more uploads in parallel than usual
+        draining = true;
+        inFlightUploads.release(SHUTDOWN_UPLOAD_PARALLELISM);
+        priorityUploads.release(SHUTDOWN_UPLOAD_PARALLELISM);
+        if (errorCoalescer != null) {
+            for (TelemetryPayload event : errorCoalescer.drain()) {
+                buffer(event);
+            }
+        }
+        drainRemaining(deadline);
+        awaitUploads(priorityUploads, PRIORITY_MAX_IN_FLIGHT + SHUTDOWN_UPLOAD_PARALLELISM, remainingMs(deadline));
+        awaitUploads(inFlightUploads, config.getMaxInFlightUploads() + SHUTDOWN_UPLOAD_PARALLELISM, remainingMs(deadline));
+        
+        scheduler.shutdownNow();
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                // Ignore - segments are recovered on next start
+            }
+        }
+        if (watchingPricing) {
+            ModelPricing.unwatch();
+        }
+        removeShutdownHook();
+    }
+
+    /**
+     * Upload everything still buffered, waiting for upload slots until the
+     * deadline. What cannot be sent in time is spooled and counted as failed.
+     */
+    private void drainRemaining(long deadline) {
+        if (rollup != null) {
+            List<TelemetryRollup.Record> records = rollup.drainAll();
+            if (!records.isEmpty()) {
+                if (acquireUpload(deadline)) {
+                    attemptUpload(Collections.emptyList(), records, 0, inFlightUploads);
+                } else {
+                    spool(Collections.emptyList(), records);
+                }
+            }
+        }
+        flushPriority();
+        boolean inTime = true;
+        while (true) {
+            // Priority events that found no slot of their own go out with the rest
+            List<TelemetryPayload> batch = new ArrayList<>();
+            priorityDrainLock.lock();
+            try {
+                priorityBuffer.drainTo(batch, config.getPriorityBatchSize());
+            } finally {
+                priorityDrainLock.unlock();
+            }
+            if (batch.isEmpty()) {
+                batch = drainBatch();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            inTime = inTime && acquireUpload(deadline);
+            if (inTime) {
+                attemptUpload(batch, Collections.emptyList(), 0, inFlightUploads);
+            } else {
+                failedEvents.add(batch.size());
+                spool(batch, Collections.emptyList());
+            }
+        }
+    }
+
+    private boolean acquireUpload(long deadline) {
+        try {
+            return inFlightUploads.tryAcquire(remainingMs(deadline), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long remainingMs(long deadlineNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Wait for in-flight uploads to finish, up to the given time
+     */
+    private static void awaitUploads(Semaphore uploads, int permits, long timeoutMs) {
+        try {
+            if (uploads.tryAcquire(permits, timeoutMs, TimeUnit.MILLISECONDS)) {
+                uploads.release(permits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread registerShutdownHook(TelemetryClient client) {
+        Thread hook = new Thread(client::shutdown, "langmesh-telemetry-shutdown");
+        try {
+            Runtime.getRuntime().addShutdownHook(hook);
+            return hook;
+        } catch (IllegalStateException | SecurityException e) {
+            // JVM already exiting, or hooks not permitted
+            return null;
+        }
+    }
+
+    private void removeShutdownHook() {
+        if (shutdownHook == null || Thread.currentThread() == shutdownHook) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException | SecurityException e) {
+            // JVM already exiting
+        }
+    }
+
+    private static Dispatcher createDispatcher() {
+        // Daemon threads so pending uploads never keep the JVM alive; each
+        // client caps its own uploads with maxInFlightUploads
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "langmesh-telemetry-http-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64);
+        return dispatcher;
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "langmesh-telemetry");
+            t.setDaemon(true);
+            return t;
+        });
+        // Timers are only armed while there is work, so let the thread go when idle
+        executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Open this client's spool in a subdirectory named after a hash of its API
+     * key and endpoint, so batches are only ever replayed with the credentials
+     * they were recorded under
+     */
+    private static TelemetrySpool openSpool(String apiKey, langmeshConfig.TelemetryConfig config) {
+        if (config.getSpoolDirectory() == null) {
+            return null;
+        }
+        String owner = PromptHasher.get(langmeshConfig.TelemetryConfig.PromptHash.SHA256)
+                .update(apiKey).update("\n").update(config.getEndpoint()).finish();
+        try {
+            return new TelemetrySpool(config.getSpoolDirectory().resolve(owner), config.getSpoolMaxBytes(),
+                    config.getSpoolSegmentBytes());
+        } catch (IOException | RuntimeException e) {
+            // Spooling is best effort - run without it, e.g. while another client holds the directory
+            return null;
+        }
+    }
+
+    private static TelemetryBuffer<TelemetryPayload> createBuffer(langmeshConfig.TelemetryConfig config) {
+        switch (config.getIngestStrategy()) {
+            case STRIPED:
+                return new StripedBuffer<>(config.getStripeCapacity());
+            case PER_TENANT:
+                return new TenantBuffer(config.getTenantBufferCapacity(), config.getTenantBufferCapacities(),
+                        config.getMaxTenants());
+            case SHARED_QUEUE:
+            default:
+                return new MpscRingBuffer<>(config.getBufferCapacity());
+        }
+    }
+
+    private static ThreadPoolExecutor createWorkerPool(langmeshConfig.TelemetryConfig config, LongAdder rejected) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                config.getWorkerThreads(),
+                config.getWorkerThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getWorkerQueueSize()),
+                r -> {
+                    Thread t = new Thread(r, "langmesh-telemetry-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, executor) -> rejected.increment()
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
     // Helper methods
     
+    /**
+     * Unique, time-ordered request ID - see {@link RequestIds}
+     */
     public static String generateRequestId() {
-        return "req_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+        return RequestIds.next();
     }
 
+    /**
+     * SHA-256 dedup key for a prompt: the first 8 digest bytes as hex
+     */
     public static String hashPrompt(String prompt) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(prompt.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (int i = 0; i < Math.min(8, hash.length); i++) {
-                String hex = Integer.toHexString(0xff & hash[i]);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            return String.valueOf(prompt.hashCode());
-        }
+        return hashPrompt(prompt, langmeshConfig.TelemetryConfig.PromptHash.SHA256);
     }
 
+    public static String hashPrompt(String prompt, langmeshConfig.TelemetryConfig.PromptHash algorithm) {
+        return PromptHasher.get(algorithm).update(prompt).finish();
+    }
+
+    /**
+     * Estimated USD cost of a call - see {@link ModelPricing} for how models are matched
+     */
     public static double calculateCost(String model, int promptTokens, int completionTokens) {
-        Map<String, double[]> pricing = new HashMap<>();
-        pricing.put("gpt-4o", new double[]{2.5, 10.0});
-        pricing.put("gpt-4o-mini", new double[]{0.15, 0.6});
-        pricing.put("gpt-4-turbo", new double[]{10.0, 30.0});
-        pricing.put("gpt-4", new double[]{30.0, 60.0});
-        pricing.put("gpt-3.5-turbo", new double[]{0.5, 1.5});
-        
-        double[] prices = pricing.get(model);
-        if (prices == null) {
-            return (promptTokens + completionTokens) * 0.00001;
+        return ModelPricing.cost(model, promptTokens, completionTokens);
+    }
+
+    /**
+     * Which tail-sampling rule decided an event
+     */
+    public enum SampleReason {
+        /** Kept: the call failed */
+        ERROR,
+        /** Kept: latency at or over tailLatencyThresholdMs */
+        SLOW,
+        /** Kept: estimated cost at or over tailCostThresholdUsd */
+        COSTLY,
+        /** Kept by the sampleRate draw */
+        SAMPLED,
+        /** Dropped by the sampleRate draw */
+        DROPPED
+    }
+
+    private static LongAdder[] newCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Lookup key for shared clients
+     */
+    private static final class SharedKey {
+        private final String apiKey;
+        private final langmeshConfig.TelemetryConfig config;
+
+        SharedKey(String apiKey, langmeshConfig.TelemetryConfig config) {
+            this.apiKey = apiKey;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SharedKey)) return false;
+            SharedKey other = (SharedKey) o;
+            return Objects.equals(apiKey, other.apiKey) && config.equals(other.config);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(apiKey) + config.hashCode();
         }
-        
-        return (promptTokens / 1_000_000.0) * prices[0] + (completionTokens / 1_000_000.0) * prices[1];
     }
 
     /**
      * Telemetry payload
+     *
+     * Timestamps are held as epoch nanoseconds and optional numbers as
+     * primitives with an "unset" value; text is produced at serialization.
      */
     public static class TelemetryPayload {
+        /** maxTokens value meaning "not set" */
+        public static final int NO_MAX_TOKENS = -1;
+
         private final String requestId;
         private final String orgId;
         private final String projectId;
         private final String endpoint;
         private final String model;
-        private final Integer maxTokens;
-        private final Double temperature;
-        private final String timestampStart;
-        private final String timestampEnd;
+        private final int maxTokens;
+        private final double temperature;
+        private final long timestampStartNanos;
+        private final long timestampEndNanos;
         private final int promptTokens;
         private final int completionTokens;
         private final int totalTokens;
@@ -203,6 +1291,11 @@ public class TelemetryClient {
         private final String errorClass;
         private final String errorMessage;
         private final String promptHash;
+        private final int occurrences;
+        private final long latencyMinMs;
+        private final long latencyMaxMs;
+        // Set by the client when an adaptive sampling draw keeps the event, NaN otherwise
+        double sampleRate = Double.NaN;
 
         public TelemetryPayload(Builder builder) {
             this.requestId = builder.requestId;
@@ -212,8 +1305,8 @@ public class TelemetryClient {
             this.model = builder.model;
             this.maxTokens = builder.maxTokens;
             this.temperature = builder.temperature;
-            this.timestampStart = builder.timestampStart;
-            this.timestampEnd = builder.timestampEnd;
+            this.timestampStartNanos = builder.timestampStartNanos;
+            this.timestampEndNanos = builder.timestampEndNanos;
             this.promptTokens = builder.promptTokens;
             this.completionTokens = builder.completionTokens;
             this.totalTokens = builder.totalTokens;
@@ -222,6 +1315,53 @@ public class TelemetryClient {
             this.errorClass = builder.errorClass;
             this.errorMessage = builder.errorMessage;
             this.promptHash = builder.promptHash;
+            this.occurrences = builder.occurrences;
+            this.latencyMinMs = builder.latencyMinMs;
+            this.latencyMaxMs = builder.latencyMaxMs;
+        }
+
+        public String getRequestId() { return requestId; }
+        public String getOrgId() { return orgId; }
+        public String getProjectId() { return projectId; }
+        public String getEndpoint() { return endpoint; }
+        public String getModel() { return model; }
+        /** @return max tokens, or {@link #NO_MAX_TOKENS} when not set */
+        public int getMaxTokens() { return maxTokens; }
+        /** @return temperature, or NaN when not set */
+        public double getTemperature() { return temperature; }
+        public long getTimestampStartNanos() { return timestampStartNanos; }
+        public long getTimestampEndNanos() { return timestampEndNanos; }
+        /** Formats on each call - prefer {@link #getTimestampStartNanos()} */
+        public String getTimestampStart() { return Timestamps.toIsoString(timestampStartNanos); }
+        /** Formats on each call - prefer {@link #getTimestampEndNanos()} */
+        public String getTimestampEnd() { return Timestamps.toIsoString(timestampEndNanos); }
+        public int getPromptTokens() { return promptTokens; }
+        public int getCompletionTokens() { return completionTokens; }
+        public int getTotalTokens() { return totalTokens; }
+        public double getCostEstimateUsd() { return costEstimateUsd; }
+        public long getLatencyMs() { return latencyMs; }
+        public String getErrorClass() { return errorClass; }
+        public String getErrorMessage() { return errorMessage; }
+        public String getPromptHash() { return promptHash; }
+        /** Calls this event stands for - more than 1 for coalesced errors, whose latencyMs is the mean */
+        public int getOccurrences() { return occurrences; }
+        public long getLatencyMinMs() { return occurrences > 1 ? latencyMinMs : latencyMs; }
+        public long getLatencyMaxMs() { return occurrences > 1 ? latencyMaxMs : latencyMs; }
+        /** @return adaptive sample rate this event was kept at, or NaN when it was not sampled at one */
+        public double getSampleRate() { return sampleRate; }
+
+        /**
+         * Rough in-memory/serialized size, used for buffer byte caps
+         */
+        int estimatedBytes() {
+            return 256
+                    + length(requestId) + length(orgId) + length(projectId) + length(endpoint) + length(model)
+                    + 2 * Timestamps.MAX_CHARS
+                    + length(errorClass) + length(errorMessage) + length(promptHash);
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
         }
 
         public Map<String, Object> toMap() {
@@ -233,12 +1373,12 @@ public class TelemetryClient {
             request.put("projectId", projectId);
             request.put("endpoint", endpoint);
             request.put("model", model);
-            request.put("maxTokens", maxTokens);
-            request.put("temperature", temperature);
-            request.put("timestampStart", timestampStart);
+            request.put("maxTokens", maxTokens != NO_MAX_TOKENS ? maxTokens : null);
+            request.put("temperature", !Double.isNaN(temperature) ? temperature : null);
+            request.put("timestampStart", getTimestampStart());
             
             Map<String, Object> response = new HashMap<>();
-            response.put("timestampEnd", timestampEnd);
+            response.put("timestampEnd", getTimestampEnd());
             Map<String, Object> tokenUsage = new HashMap<>();
             tokenUsage.put("promptTokens", promptTokens);
             tokenUsage.put("completionTokens", completionTokens);
@@ -248,12 +1388,22 @@ public class TelemetryClient {
             response.put("latencyMs", latencyMs);
             response.put("errorClass", errorClass);
             response.put("errorMessage", errorMessage);
+            if (occurrences > 1) {
+                response.put("occurrences", occurrences);
+                Map<String, Object> latencySummary = new HashMap<>();
+                latencySummary.put("min", latencyMinMs);
+                latencySummary.put("max", latencyMaxMs);
+                response.put("latencySummaryMs", latencySummary);
+            }
             
             Map<String, Object> context = new HashMap<>();
             context.put("sdkLanguage", SDK_LANGUAGE);
             context.put("sdkVersion", SDK_VERSION);
             context.put("openaiClientVersion", "unknown");
             context.put("promptHash", promptHash);
+            if (!Double.isNaN(sampleRate)) {
+                context.put("sampleRate", sampleRate);
+            }
             
             map.put("request", request);
             map.put("response", response);
@@ -262,6 +1412,126 @@ public class TelemetryClient {
             return map;
         }
 
+        /**
+         * Write this payload as a JSON object - same shape as {@link #toMap()}
+         */
+        void writeTo(JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            
+            gen.writeObjectFieldStart("request");
+            writeString(gen, "requestId", requestId);
+            writeString(gen, "orgId", orgId);
+            writeString(gen, "projectId", projectId);
+            writeString(gen, "endpoint", endpoint);
+            writeString(gen, "model", model);
+            gen.writeFieldName("maxTokens");
+            if (maxTokens != NO_MAX_TOKENS) gen.writeNumber(maxTokens); else gen.writeNull();
+            gen.writeFieldName("temperature");
+            if (!Double.isNaN(temperature)) gen.writeNumber(temperature); else gen.writeNull();
+            writeTimestamp(gen, "timestampStart", timestampStartNanos);
+            gen.writeEndObject();
+            
+            gen.writeObjectFieldStart("response");
+            writeTimestamp(gen, "timestampEnd", timestampEndNanos);
+            gen.writeObjectFieldStart("tokenUsage");
+            gen.writeNumberField("promptTokens", promptTokens);
+            gen.writeNumberField("completionTokens", completionTokens);
+            gen.writeNumberField("totalTokens", totalTokens);
+            gen.writeEndObject();
+            gen.writeNumberField("costEstimateUsd", costEstimateUsd);
+            gen.writeNumberField("latencyMs", latencyMs);
+            writeString(gen, "errorClass", errorClass);
+            writeString(gen, "errorMessage", errorMessage);
+            writeOccurrences(gen);
+            gen.writeEndObject();
+            
+            gen.writeObjectFieldStart("context");
+            gen.writeStringField("sdkLanguage", SDK_LANGUAGE);
+            gen.writeStringField("sdkVersion", SDK_VERSION);
+            gen.writeStringField("openaiClientVersion", "unknown");
+            writeString(gen, "promptHash", promptHash);
+            writeSampleRate(gen);
+            gen.writeEndObject();
+            
+            gen.writeEndObject();
+        }
+
+        private static void writeString(JsonGenerator gen, String field, String value) throws IOException {
+            if (value != null) {
+                gen.writeStringField(field, value);
+            } else {
+                gen.writeNullField(field);
+            }
+        }
+
+        /**
+         * Write this payload as one flat object for {@link langmeshConfig.TelemetryConfig.BatchFormat#DICTIONARY},
+         * with repeated strings replaced by their index in the batch string table
+         */
+        void writeEncodedTo(JsonGenerator gen, TelemetryBatchBody.StringTable strings) throws IOException {
+            gen.writeStartObject();
+            writeString(gen, "requestId", requestId);
+            writeIndex(gen, "orgId", strings.indexOf(orgId));
+            writeIndex(gen, "projectId", strings.indexOf(projectId));
+            writeIndex(gen, "endpoint", strings.indexOf(endpoint));
+            writeIndex(gen, "model", strings.indexOf(model));
+            if (maxTokens != NO_MAX_TOKENS) gen.writeNumberField("maxTokens", maxTokens);
+            if (!Double.isNaN(temperature)) gen.writeNumberField("temperature", temperature);
+            writeTimestamp(gen, "timestampStart", timestampStartNanos);
+            writeTimestamp(gen, "timestampEnd", timestampEndNanos);
+            gen.writeNumberField("promptTokens", promptTokens);
+            gen.writeNumberField("completionTokens", completionTokens);
+            gen.writeNumberField("totalTokens", totalTokens);
+            gen.writeNumberField("costEstimateUsd", costEstimateUsd);
+            gen.writeNumberField("latencyMs", latencyMs);
+            writeIndex(gen, "errorClass", strings.indexOf(errorClass));
+            if (errorMessage != null) gen.writeStringField("errorMessage", errorMessage);
+            if (promptHash != null) gen.writeStringField("promptHash", promptHash);
+            writeOccurrences(gen);
+            writeSampleRate(gen);
+            gen.writeEndObject();
+        }
+
+        private void writeSampleRate(JsonGenerator gen) throws IOException {
+            if (!Double.isNaN(sampleRate)) {
+                gen.writeNumberField("sampleRate", sampleRate);
+            }
+        }
+
+        private void writeOccurrences(JsonGenerator gen) throws IOException {
+            if (occurrences > 1) {
+                gen.writeNumberField("occurrences", occurrences);
+                gen.writeObjectFieldStart("latencySummaryMs");
+                gen.writeNumberField("min", latencyMinMs);
+                gen.writeNumberField("max", latencyMaxMs);
+                gen.writeEndObject();
+            }
+        }
+
+        /**
+         * Add the strings {@link #writeEncodedTo} indexes to the batch table
+         */
+        void internStrings(TelemetryBatchBody.StringTable strings) {
+            strings.add(orgId);
+            strings.add(projectId);
+            strings.add(endpoint);
+            strings.add(model);
+            strings.add(errorClass);
+        }
+
+        // Absent values are left out entirely in the dictionary format
+        private static void writeIndex(JsonGenerator gen, String field, int index) throws IOException {
+            if (index >= 0) {
+                gen.writeNumberField(field, index);
+            }
+        }
+
+        private static void writeTimestamp(JsonGenerator gen, String field, long epochNanos) throws IOException {
+            char[] buf = Timestamps.buffer();
+            gen.writeFieldName(field);
+            gen.writeString(buf, 0, Timestamps.format(epochNanos, buf));
+        }
+
         public static Builder builder() {
             return new Builder();
         }
@@ -272,10 +1542,10 @@ public class TelemetryClient {
             private String projectId;
             private String endpoint;
             private String model;
-            private Integer maxTokens;
-            private Double temperature;
-            private String timestampStart;
-            private String timestampEnd;
+            private int maxTokens = NO_MAX_TOKENS;
+            private double temperature = Double.NaN;
+            private long timestampStartNanos;
+            private long timestampEndNanos;
             private int promptTokens;
             private int completionTokens;
             private int totalTokens;
@@ -284,16 +1554,25 @@ public class TelemetryClient {
             private String errorClass;
             private String errorMessage;
             private String promptHash;
+            private int occurrences = 1;
+            private long latencyMinMs;
+            private long latencyMaxMs;
 
             public Builder requestId(String requestId) { this.requestId = requestId; return this; }
             public Builder orgId(String orgId) { this.orgId = orgId; return this; }
             public Builder projectId(String projectId) { this.projectId = projectId; return this; }
             public Builder endpoint(String endpoint) { this.endpoint = endpoint; return this; }
             public Builder model(String model) { this.model = model; return this; }
-            public Builder maxTokens(Integer maxTokens) { this.maxTokens = maxTokens; return this; }
-            public Builder temperature(Double temperature) { this.temperature = temperature; return this; }
-            public Builder timestampStart(String timestampStart) { this.timestampStart = timestampStart; return this; }
-            public Builder timestampEnd(String timestampEnd) { this.timestampEnd = timestampEnd; return this; }
+            public Builder maxTokens(int maxTokens) { this.maxTokens = maxTokens; return this; }
+            public Builder maxTokens(Integer maxTokens) { this.maxTokens = maxTokens != null ? maxTokens : NO_MAX_TOKENS; return this; }
+            public Builder temperature(double temperature) { this.temperature = temperature; return this; }
+            public Builder temperature(Double temperature) { this.temperature = temperature != null ? temperature : Double.NaN; return this; }
+            public Builder timestampStartNanos(long epochNanos) { this.timestampStartNanos = epochNanos; return this; }
+            public Builder timestampEndNanos(long epochNanos) { this.timestampEndNanos = epochNanos; return this; }
+            /** ISO-8601 instant, parsed once here */
+            public Builder timestampStart(String timestampStart) { this.timestampStartNanos = Timestamps.toEpochNanos(Instant.parse(timestampStart)); return this; }
+            /** ISO-8601 instant, parsed once here */
+            public Builder timestampEnd(String timestampEnd) { this.timestampEndNanos = Timestamps.toEpochNanos(Instant.parse(timestampEnd)); return this; }
             public Builder promptTokens(int promptTokens) { this.promptTokens = promptTokens; return this; }
             public Builder completionTokens(int completionTokens) { this.completionTokens = completionTokens; return this; }
             public Builder totalTokens(int totalTokens) { this.totalTokens = totalTokens; return this; }
@@ -302,6 +1581,40 @@ public class TelemetryClient {
             public Builder errorClass(String errorClass) { this.errorClass = errorClass; return this; }
             public Builder errorMessage(String errorMessage) { this.errorMessage = errorMessage; return this; }
             public Builder promptHash(String promptHash) { this.promptHash = promptHash; return this; }
+            /** Mark the event as standing for several calls, with latencyMs as their mean */
+            public Builder occurrences(int occurrences, long latencyMinMs, long latencyMaxMs) {
+                this.occurrences = Math.max(1, occurrences);
+                this.latencyMinMs = latencyMinMs;
+                this.latencyMaxMs = latencyMaxMs;
+                return this;
+            }
+
+            /**
+             * Clear every field so one builder can be reused per thread
+             */
+            public Builder reset() {
+                requestId = null;
+                orgId = null;
+                projectId = null;
+                endpoint = null;
+                model = null;
+                maxTokens = NO_MAX_TOKENS;
+                temperature = Double.NaN;
+                timestampStartNanos = 0;
+                timestampEndNanos = 0;
+                promptTokens = 0;
+                completionTokens = 0;
+                totalTokens = 0;
+                costEstimateUsd = 0;
+                latencyMs = 0;
+                errorClass = null;
+                errorMessage = null;
+                promptHash = null;
+                occurrences = 1;
+                latencyMinMs = 0;
+                latencyMaxMs = 0;
+                return this;
+            }
 
             public TelemetryPayload build() {
                 return new TelemetryPayload(this);
@@ -0,0 +1,248 @@
+package ai.langmesh.openai;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side aggregation of telemetry into per-key rollups
+ *
+ * Events are folded into accumulators keyed by tenant, endpoint, model and
+ * error class over a time window. On each rotation the open window is closed
+ * and the window closed on the previous rotation is turned into records, so
+ * updates racing with a rotation have a full window to land before the
+ * accumulators are read.
+ */
+final class TelemetryRollup {
+    /** Upper bounds in ms of the latency histogram buckets; the last bucket is unbounded */
+    static final long[] LATENCY_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10_000, 30_000, 60_000};
+
+    private volatile Window open;
+    private Window closed;
+
+    TelemetryRollup() {
+        this.open = new Window(System.currentTimeMillis());
+    }
+
+    /**
+     * Fold one event into the open window
+     */
+    void record(TelemetryClient.TelemetryPayload payload) {
+        open.accumulate(payload);
+    }
+
+    /**
+     * Close the open window and return the records of the previously closed one
+     */
+    synchronized List<Record> rotate() {
+        long now = System.currentTimeMillis();
+        Window ready = closed;
+        Window current = open;
+        current.end = now;
+        closed = current;
+        open = new Window(now);
+        return ready != null ? ready.snapshot() : Collections.emptyList();
+    }
+
+    /**
+     * Close every window and return all records - used at shutdown
+     */
+    synchronized List<Record> drainAll() {
+        List<Record> records = new ArrayList<>(rotate());
+        records.addAll(rotate());
+        closed = null;
+        return records;
+    }
+
+    /**
+     * True when no window holds data, so no rotation is needed
+     */
+    synchronized boolean isIdle() {
+        return open.accumulators.isEmpty() && (closed == null || closed.accumulators.isEmpty());
+    }
+
+    private static final class Window {
+        final long start;
+        volatile long end;
+        final Map<Key, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        void accumulate(TelemetryClient.TelemetryPayload payload) {
+            Key key = new Key(payload.getOrgId(), payload.getProjectId(), payload.getEndpoint(),
+                    payload.getModel(), payload.getErrorClass());
+            Accumulator accumulator = accumulators.get(key);
+            if (accumulator == null) {
+                accumulator = accumulators.computeIfAbsent(key, k -> new Accumulator());
+            }
+            accumulator.add(payload);
+        }
+
+        List<Record> snapshot() {
+            List<Record> records = new ArrayList<>(accumulators.size());
+            for (Map.Entry<Key, Accumulator> entry : accumulators.entrySet()) {
+                records.add(entry.getValue().toRecord(entry.getKey(), start, end));
+            }
+            return records;
+        }
+    }
+
+    private static final class Key {
+        final String orgId;
+        final String projectId;
+        final String endpoint;
+        final String model;
+        final String errorClass;
+        private final int hash;
+
+        Key(String orgId, String projectId, String endpoint, String model, String errorClass) {
+            this.orgId = orgId;
+            this.projectId = projectId;
+            this.endpoint = endpoint;
+            this.model = model;
+            this.errorClass = errorClass;
+            this.hash = Objects.hash(orgId, projectId, endpoint, model, errorClass);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(orgId, other.orgId) && Objects.equals(projectId, other.projectId)
+                    && Objects.equals(endpoint, other.endpoint) && Objects.equals(model, other.model)
+                    && Objects.equals(errorClass, other.errorClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Accumulator {
+        final LongAdder count = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder completionTokens = new LongAdder();
+        final LongAdder totalTokens = new LongAdder();
+        final DoubleAdder costUsd = new DoubleAdder();
+        final LongAdder latencySumMs = new LongAdder();
+        final LongAccumulator latencyMinMs = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        final LongAccumulator latencyMaxMs = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS_MS.length + 1);
+
+        void add(TelemetryClient.TelemetryPayload payload) {
+            long latency = payload.getLatencyMs();
+            count.increment();
+            promptTokens.add(payload.getPromptTokens());
+            completionTokens.add(payload.getCompletionTokens());
+            totalTokens.add(payload.getTotalTokens());
+            costUsd.add(payload.getCostEstimateUsd());
+            latencySumMs.add(latency);
+            latencyMinMs.accumulate(latency);
+            latencyMaxMs.accumulate(latency);
+            latencyBuckets.incrementAndGet(bucketFor(latency));
+        }
+
+        Record toRecord(Key key, long start, long end) {
+            long[] buckets = new long[latencyBuckets.length()];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = latencyBuckets.get(i);
+            }
+            return new Record(key, start, end, count.sum(), promptTokens.sum(), completionTokens.sum(),
+                    totalTokens.sum(), costUsd.sum(), latencySumMs.sum(), latencyMinMs.get(), latencyMaxMs.get(), buckets);
+        }
+    }
+
+    static int bucketFor(long latencyMs) {
+        for (int i = 0; i < LATENCY_BOUNDS_MS.length; i++) {
+            if (latencyMs <= LATENCY_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BOUNDS_MS.length;
+    }
+
+    /**
+     * One shipped rollup: totals for a key over a closed window
+     */
+    static final class Record {
+        private final Key key;
+        private final long windowStart;
+        private final long windowEnd;
+        private final long count;
+        private final long promptTokens;
+        private final long completionTokens;
+        private final long totalTokens;
+        private final double costUsd;
+        private final long latencySumMs;
+        private final long latencyMinMs;
+        private final long latencyMaxMs;
+        private final long[] latencyBuckets;
+
+        private Record(Key key, long windowStart, long windowEnd, long count, long promptTokens,
+                       long completionTokens, long totalTokens, double costUsd, long latencySumMs,
+                       long latencyMinMs, long latencyMaxMs, long[] latencyBuckets) {
+            this.key = key;
+            this.windowStart = windowStart;
+            this.windowEnd = windowEnd;
+            this.count = count;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+            this.totalTokens = totalTokens;
+            this.costUsd = costUsd;
+            this.latencySumMs = latencySumMs;
+            this.latencyMinMs = latencyMinMs;
+            this.latencyMaxMs = latencyMaxMs;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        long getCount() { return count; }
+        long getTotalTokens() { return totalTokens; }
+        double getCostUsd() { return costUsd; }
+        String getModel() { return key.model; }
+        String getErrorClass() { return key.errorClass; }
+        long[] getLatencyBuckets() { return latencyBuckets.clone(); }
+
+        void writeTo(JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            gen.writeStringField("orgId", key.orgId);
+            gen.writeStringField("projectId", key.projectId);
+            gen.writeStringField("endpoint", key.endpoint);
+            gen.writeStringField("model", key.model);
+            gen.writeStringField("errorClass", key.errorClass);
+            gen.writeStringField("windowStart", Instant.ofEpochMilli(windowStart).toString());
+            gen.writeStringField("windowEnd", Instant.ofEpochMilli(windowEnd).toString());
+            gen.writeNumberField("count", count);
+            gen.writeObjectFieldStart("tokenUsage");
+            gen.writeNumberField("promptTokens", promptTokens);
+            gen.writeNumberField("completionTokens", completionTokens);
+            gen.writeNumberField("totalTokens", totalTokens);
+            gen.writeEndObject();
+            gen.writeNumberField("costEstimateUsd", costUsd);
+            gen.writeObjectFieldStart("latencyMs");
+            gen.writeNumberField("sum", latencySumMs);
+            gen.writeNumberField("min", count > 0 ? latencyMinMs : 0);
+            gen.writeNumberField("max", count > 0 ? latencyMaxMs : 0);
+            gen.writeFieldName("bounds");
+            gen.writeArray(LATENCY_BOUNDS_MS, 0, LATENCY_BOUNDS_MS.length);
+            gen.writeFieldName("buckets");
+            gen.writeArray(latencyBuckets, 0, latencyBuckets.length);
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package ai.langmesh.openai;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Durable on-disk spool for telemetry batches that could not be uploaded
+ *
+ * Batches are appended to fixed-size, memory-mapped segment files as
+ * length-prefixed records. Replayed records are tombstoned in place by
+ * negating their length, and a segment is deleted once all its records have
+ * been replayed. When the spool would exceed its size cap the oldest segment
+ * is evicted, so disk usage stays bounded during long outages.
+ *
+ * Record layout: [int length][length bytes], where length 0 marks the end of
+ * written data and a negative length marks an already replayed record.
+ *
+ * A spool owns its directory through a lock file; a second spool on the same
+ * directory, in this JVM or another, fails to open instead of sharing segments.
+ */
+final class TelemetrySpool implements Closeable {
+    private static final String PREFIX = "telemetry-";
+    private static final String SUFFIX = ".spool";
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final String LOCK_FILE = "spool.lock";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private long nextSequence;
+    private long evictedRecords;
+
+    TelemetrySpool(Path directory, long maxBytes, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = (int) Math.max(1, maxBytes / segmentBytes);
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            this.lock = tryLock(lockChannel);
+            if (lock == null) {
+                throw new IOException("Spool directory is in use: " + directory);
+            }
+            recover();
+        } catch (IOException | RuntimeException e) {
+            closeSegments();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another spool in this JVM
+            return null;
+        }
+    }
+
+    /**
+     * Append a record - returns false if it can never fit in a segment
+     */
+    synchronized boolean append(byte[] record) throws IOException {
+        if (record.length == 0 || record.length + 2 * HEADER_BYTES > segmentBytes) {
+            return false;
+        }
+        Segment active = segments.peekLast();
+        if (active == null || !active.hasRoom(record.length)) {
+            active = openSegment(nextSequence++);
+            segments.addLast(active);
+            while (segments.size() > maxSegments) {
+                Segment oldest = segments.removeFirst();
+                evictedRecords += oldest.pendingRecords();
+                oldest.delete();
+            }
+        }
+        active.write(record);
+        return true;
+    }
+
+    /**
+     * Oldest record not yet replayed, or null when the spool is drained
+     */
+    synchronized Entry peek() {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            Entry entry = oldest.peek();
+            if (entry != null) {
+                return entry;
+            }
+            if (segments.size() == 1) {
+                return null;
+            }
+            segments.removeFirst();
+            oldest.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Mark a record returned by {@link #peek()} as replayed. A no-op if its
+     * segment has been evicted since.
+     */
+    synchronized void commit(Entry entry) {
+        Segment segment = entry.segment;
+        if (!segments.contains(segment)) {
+            return;
+        }
+        segment.consume(entry.position);
+        if (segment.peek() == null && segment != segments.peekLast()) {
+            segments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * Records discarded because the size cap forced out their segment
+     */
+    synchronized long getEvictedRecords() {
+        return evictedRecords;
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            closeSegments();
+        } finally {
+            // Closing the channel releases the lock
+            lockChannel.close();
+        }
+    }
+
+    private void closeSegments() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private void recover() throws IOException {
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                existing.add(path);
+            }
+        }
+        Collections.sort(existing);
+        for (Path path : existing) {
+            long sequence = parseSequence(path);
+            if (sequence < 0) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            Segment segment = openSegment(sequence);
+            if (segment.peek() == null && segment.writePos > 0) {
+                // Fully replayed before the last shutdown
+                segment.delete();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%016d%s", PREFIX, sequence, SUFFIX));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            return new Segment(path, channel, buffer);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long parseSequence(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A pending record and where it lives, so a commit marks exactly this record
+     */
+    static final class Entry {
+        final byte[] data;
+        private final Segment segment;
+        private final int position;
+
+        private Entry(byte[] data, Segment segment, int position) {
+            this.data = data;
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * One memory-mapped segment file
+     */
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePos;
+        private int readPos;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            scan();
+        }
+
+        private void scan() {
+            int pos = 0;
+            readPos = -1;
+            while (pos + HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(pos);
+                if (length == 0 || Math.abs(length) > buffer.capacity() - pos - HEADER_BYTES) {
+                    break;
+                }
+                if (length > 0 && readPos < 0) {
+                    readPos = pos;
+                }
+                pos += HEADER_BYTES + Math.abs(length);
+            }
+            writePos = pos;
+            if (readPos < 0) {
+                readPos = writePos;
+            }
+        }
+
+        boolean hasRoom(int length) {
+            // Keep room for the terminating zero length
+            return writePos + HEADER_BYTES + length + HEADER_BYTES <= buffer.capacity();
+        }
+
+        void write(byte[] record) {
+            int pos = writePos;
+            // Payload first, then the length that makes it visible
+            ByteBuffer target = buffer.duplicate();
+            target.position(pos + HEADER_BYTES);
+            target.put(record);
+            buffer.putInt(pos + HEADER_BYTES + record.length, 0);
+            buffer.putInt(pos, record.length);
+            writePos = pos + HEADER_BYTES + record.length;
+        }
+
+        Entry peek() {
+            while (readPos < writePos) {
+                int length = buffer.getInt(readPos);
+                if (length > 0) {
+                    byte[] record = new byte[length];
+                    ByteBuffer source = buffer.duplicate();
+                    source.position(readPos + HEADER_BYTES);
+                    source.get(record);
+                    return new Entry(record, this, readPos);
+                }
+                readPos += HEADER_BYTES - length;
+            }
+            return null;
+        }
+
+        void consume(int position) {
+            int length = buffer.getInt(position);
+            if (length > 0) {
+                buffer.putInt(position, -length);
+            }
+        }
+
+        int pendingRecords() {
+            int count = 0;
+            for (int pos = readPos; pos < writePos; ) {
+                int length = buffer.getInt(pos);
+                if (length > 0) {
+                    count++;
+                }
+                pos += HEADER_BYTES + Math.abs(length);
+            }
+            return count;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Best effort - a leftover segment is replayed or removed on next start
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ai.langmesh.openai;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event buffer partitioned by tenant (orgId, projectId)
+ *
+ * Each tenant gets its own bounded ring, so a noisy tenant fills only its
+ * own quota. Draining goes round-robin over tenants in equal shares from a
+ * rotating start, so quiet tenants get into every batch. Under DROP_OLDEST a
+ * tenant at its quota evicts its own oldest event, while the global buffer
+ * cap evicts from whichever tenant holds the most events.
+ *
+ * Tenants past {@code maxTenants} share one overflow ring. Rings are kept
+ * once created - a producer may still hold one - which bounds memory at
+ * roughly maxTenants quotas.
+ */
+final class TenantBuffer implements TelemetryBuffer<TelemetryClient.TelemetryPayload> {
+    private final int defaultQuota;
+    private final Map<String, Integer> quotas;
+    private final int maxTenants;
+    // orgId -> projectId -> ring; "" stands for null since the maps reject null keys
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, MpscRingBuffer<TelemetryClient.TelemetryPayload>>> tenants =
+            new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<MpscRingBuffer<TelemetryClient.TelemetryPayload>> rings = new CopyOnWriteArrayList<>();
+    private final MpscRingBuffer<TelemetryClient.TelemetryPayload> overflow;
+    private int nextRing;
+
+    /**
+     * @param quotas per-tenant capacity overrides keyed by {@link #tenantKey(String, String)}
+     */
+    TenantBuffer(int defaultQuota, Map<String, Integer> quotas, int maxTenants) {
+        this.defaultQuota = defaultQuota;
+        this.quotas = quotas;
+        this.maxTenants = Math.max(1, maxTenants);
+        this.overflow = new MpscRingBuffer<>(defaultQuota);
+        rings.add(overflow);
+    }
+
+    static String tenantKey(String orgId, String projectId) {
+        return (orgId != null ? orgId : "") + '\n' + (projectId != null ? projectId : "");
+    }
+
+    @Override
+    public boolean offer(TelemetryClient.TelemetryPayload payload) {
+        return ringFor(payload.getOrgId(), payload.getProjectId()).offer(payload);
+    }
+
+    private MpscRingBuffer<TelemetryClient.TelemetryPayload> ringFor(String orgId, String projectId) {
+        String org = orgId != null ? orgId : "";
+        String project = projectId != null ? projectId : "";
+        ConcurrentHashMap<String, MpscRingBuffer<TelemetryClient.TelemetryPayload>> projects = tenants.get(org);
+        if (projects != null) {
+            MpscRingBuffer<TelemetryClient.TelemetryPayload> ring = projects.get(project);
+            if (ring != null) {
+                return ring;
+            }
+        }
+        return register(org, project);
+    }
+
+    private synchronized MpscRingBuffer<TelemetryClient.TelemetryPayload> register(String org, String project) {
+        ConcurrentHashMap<String, MpscRingBuffer<TelemetryClient.TelemetryPayload>> projects =
+                tenants.computeIfAbsent(org, k -> new ConcurrentHashMap<>());
+        MpscRingBuffer<TelemetryClient.TelemetryPayload> ring = projects.get(project);
+        if (ring != null) {
+            return ring;
+        }
+        // rings holds the overflow ring as well as one per tenant
+        if (rings.size() - 1 >= maxTenants) {
+            return overflow;
+        }
+        ring = new MpscRingBuffer<>(quotas.getOrDefault(tenantKey(org, project), defaultQuota));
+        projects.put(project, ring);
+        rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * Remove one event from the tenant holding the most
+     */
+    @Override
+    public TelemetryClient.TelemetryPayload poll() {
+        MpscRingBuffer<TelemetryClient.TelemetryPayload> fullest = null;
+        int most = 0;
+        for (MpscRingBuffer<TelemetryClient.TelemetryPayload> ring : rings) {
+            int size = ring.size();
+            if (size > most) {
+                most = size;
+                fullest = ring;
+            }
+        }
+        return fullest != null ? fullest.poll() : null;
+    }
+
+    @Override
+    public TelemetryClient.TelemetryPayload pollPartitionOf(TelemetryClient.TelemetryPayload payload) {
+        return ringFor(payload.getOrgId(), payload.getProjectId()).poll();
+    }
+
+    @Override
+    public int drainTo(List<? super TelemetryClient.TelemetryPayload> target, int limit) {
+        Object[] snapshot = rings.toArray();
+        int count = 0;
+        // Equal shares per pass; later passes hand leftover room to tenants that still have events
+        while (count < limit) {
+            int share = Math.max(1, (limit - count) / snapshot.length);
+            int moved = 0;
+            for (int i = 0; i < snapshot.length && count < limit; i++) {
+                @SuppressWarnings("unchecked")
+                MpscRingBuffer<TelemetryClient.TelemetryPayload> ring =
+                        (MpscRingBuffer<TelemetryClient.TelemetryPayload>) snapshot[(nextRing + i) % snapshot.length];
+                int drained = ring.drainTo(target, Math.min(share, limit - count));
+                moved += drained;
+                count += drained;
+            }
+            if (moved == 0) {
+                break;
+            }
+        }
+        nextRing = (nextRing + 1) % snapshot.length;
+        return count;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (MpscRingBuffer<TelemetryClient.TelemetryPayload> ring : rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MpscRingBuffer<TelemetryClient.TelemetryPayload> ring : rings) {
+            if (!ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tenants with their own ring, not counting the shared overflow ring
+     */
+    int tenantCount() {
+        return rings.size() - 1;
+    }
+}
@@ -0,0 +1,109 @@
+package ai.langmesh.openai;
+
+import java.time.Instant;
+
+/**
+ * Epoch-nanosecond timestamps for telemetry
+ *
+ * The request path only reads the clock into a long; ISO-8601 text is
+ * produced when a payload is serialized, into a reused per-thread buffer.
+ * Output matches {@link Instant#toString()}.
+ */
+final class Timestamps {
+    /** Longest formatted value for years 0000-9999: yyyy-MM-ddTHH:mm:ss.nnnnnnnnnZ */
+    static final int MAX_CHARS = 30;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    // 0000-01-01T00:00:00Z and 10000-01-01T00:00:00Z
+    private static final long MIN_SECOND = -62_167_219_200L;
+    private static final long MAX_SECOND = 253_402_300_800L;
+
+    private static final ThreadLocal<char[]> FORMAT_BUFFER = ThreadLocal.withInitial(() -> new char[MAX_CHARS]);
+
+    private Timestamps() {
+    }
+
+    /**
+     * Wall-clock time as nanoseconds since the epoch, without allocating
+     */
+    static long nowEpochNanos() {
+        return System.currentTimeMillis() * 1_000_000L;
+    }
+
+    static long toEpochNanos(Instant instant) {
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    static String toIsoString(long epochNanos) {
+        char[] buf = FORMAT_BUFFER.get();
+        return new String(buf, 0, format(epochNanos, buf));
+    }
+
+    /**
+     * Per-thread scratch buffer for {@link #format(long, char[])}
+     */
+    static char[] buffer() {
+        return FORMAT_BUFFER.get();
+    }
+
+    /**
+     * Format as ISO-8601 UTC into buf, returning the number of chars written
+     */
+    static int format(long epochNanos, char[] buf) {
+        long seconds = Math.floorDiv(epochNanos, NANOS_PER_SECOND);
+        int nanos = (int) Math.floorMod(epochNanos, NANOS_PER_SECOND);
+        if (seconds < MIN_SECOND || seconds >= MAX_SECOND) {
+            String text = Instant.ofEpochSecond(seconds, nanos).toString();
+            text.getChars(0, text.length(), buf, 0);
+            return text.length();
+        }
+
+        long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+
+        // Civil date from days since the epoch (proleptic Gregorian)
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        int pos = 0;
+        pos = digits(buf, pos, year, 4);
+        buf[pos++] = '-';
+        pos = digits(buf, pos, month, 2);
+        buf[pos++] = '-';
+        pos = digits(buf, pos, day, 2);
+        buf[pos++] = 'T';
+        pos = digits(buf, pos, secondOfDay / 3600, 2);
+        buf[pos++] = ':';
+        pos = digits(buf, pos, secondOfDay / 60 % 60, 2);
+        buf[pos++] = ':';
+        pos = digits(buf, pos, secondOfDay % 60, 2);
+        if (nanos > 0) {
+            buf[pos++] = '.';
+            if (nanos % 1_000_000 == 0) {
+                pos = digits(buf, pos, nanos / 1_000_000, 3);
+            } else if (nanos % 1000 == 0) {
+                pos = digits(buf, pos, nanos / 1000, 6);
+            } else {
+                pos = digits(buf, pos, nanos, 9);
+            }
+        }
+        buf[pos++] = 'Z';
+        return pos;
+    }
+
+    private static int digits(char[] buf, int pos, int value, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+}
@@ -0,0 +1,131 @@
+package ai.langmesh.openai;
+
+/**
+ * Streaming xxHash64 (seed 0)
+ *
+ * Non-cryptographic and much cheaper than SHA-256; good enough for dedup keys
+ * where collisions only merge analytics rows. Not thread-safe - keep one per
+ * thread and {@link #reset()} between inputs.
+ */
+final class XxHash64 {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final byte[] pending = new byte[32];
+    private int pendingLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    XxHash64() {
+        reset();
+    }
+
+    void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        pendingLength = 0;
+        totalLength = 0;
+    }
+
+    void update(byte[] input, int offset, int length) {
+        totalLength += length;
+        if (pendingLength + length < 32) {
+            System.arraycopy(input, offset, pending, pendingLength, length);
+            pendingLength += length;
+            return;
+        }
+        int end = offset + length;
+        if (pendingLength > 0) {
+            int fill = 32 - pendingLength;
+            System.arraycopy(input, offset, pending, pendingLength, fill);
+            stripe(pending, 0);
+            offset += fill;
+            pendingLength = 0;
+        }
+        for (; offset + 32 <= end; offset += 32) {
+            stripe(input, offset);
+        }
+        pendingLength = end - offset;
+        System.arraycopy(input, offset, pending, 0, pendingLength);
+    }
+
+    long digest() {
+        long h;
+        if (totalLength >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += totalLength;
+
+        int pos = 0;
+        for (; pos + 8 <= pendingLength; pos += 8) {
+            h ^= round(0, readLong(pending, pos));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (pos + 4 <= pendingLength) {
+            h ^= (readInt(pending, pos) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+        for (; pos < pendingLength; pos++) {
+            h ^= (pending[pos] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private void stripe(byte[] input, int offset) {
+        v1 = round(v1, readLong(input, offset));
+        v2 = round(v2, readLong(input, offset + 8));
+        v3 = round(v3, readLong(input, offset + 16));
+        v4 = round(v4, readLong(input, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long h, long v) {
+        h ^= round(0, v);
+        return h * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF)
+                | (b[i + 1] & 0xFF) << 8
+                | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -1,6 +1,7 @@
 package ai.langmesh.openai;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +21,30 @@ class langmeshWrapperTest {
         assertTrue(id1.startsWith("req_"));
     }
 
+    @Test
+    void testRequestIdsUniqueAcrossThreads() throws Exception {
+        java.util.Set<String> ids = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(TelemetryClient.generateRequestId());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, ids.size());
+        
+        String earlier = TelemetryClient.generateRequestId();
+        Thread.sleep(2);
+        String later = TelemetryClient.generateRequestId();
+        assertEquals(RequestIds.LENGTH, later.length());
+        assertTrue(earlier.compareTo(later) < 0);
+    }
+
     @Test
     void testHashPrompt() {
         String hash1 = TelemetryClient.hashPrompt("Hello, world!");
@@ -31,6 +56,34 @@ class langmeshWrapperTest {
         assertEquals(16, hash1.length());
     }
 
+    @Test
+    void testPromptHasherStreamsUtf8() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("héllo wörld \u20ac \uD83D\uDE00 ");
+        }
+        String prompt = text.toString();
+        
+        byte[] digest = java.security.MessageDigest.getInstance("SHA-256")
+                .digest(prompt.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            expected.append(String.format("%02x", digest[i]));
+        }
+        assertEquals(expected.toString(), TelemetryClient.hashPrompt(prompt));
+        
+        // Known xxHash64 vectors
+        langmeshConfig.TelemetryConfig.PromptHash xxh = langmeshConfig.TelemetryConfig.PromptHash.XXHASH64;
+        assertEquals("ef46db3751d8e999", TelemetryClient.hashPrompt("", xxh));
+        assertEquals("44bc2cf5ad770999", TelemetryClient.hashPrompt("abc", xxh));
+        
+        // Feeding pieces gives the same hash as the whole
+        String half = prompt.substring(0, 40_001);
+        String rest = prompt.substring(40_001);
+        assertEquals(TelemetryClient.hashPrompt(prompt, xxh),
+                PromptHasher.get(xxh).update(half).update(rest).finish());
+    }
+
     @Test
     void testCalculateCostKnownModel() {
         double cost = TelemetryClient.calculateCost("gpt-4o", 1000, 500);
@@ -47,6 +100,86 @@ class langmeshWrapperTest {
         assertTrue(cost > 0);
     }
 
+    @Test
+    void testCalculateCostMatchesLongestModelPrefix() {
+        double gpt4o = TelemetryClient.calculateCost("gpt-4o", 1_000_000, 0);
+        assertEquals(2.5, gpt4o, 1e-9);
+        assertEquals(gpt4o, TelemetryClient.calculateCost("gpt-4o-2024-08-06", 1_000_000, 0), 1e-9);
+        assertEquals(0.15, TelemetryClient.calculateCost("gpt-4o-mini-2024-07-18", 1_000_000, 0), 1e-9);
+        assertEquals(30.0, TelemetryClient.calculateCost("gpt-4-0613", 1_000_000, 0), 1e-9);
+        // An exact snapshot entry beats its base model
+        assertEquals(5.0, TelemetryClient.calculateCost("gpt-4o-2024-05-13", 1_000_000, 0), 1e-9);
+        // A prefix only counts at a '-' or ':' boundary
+        assertEquals(10.0, TelemetryClient.calculateCost("gpt-4.5", 1_000_000, 0), 1e-9);
+    }
+
+    @Test
+    void testPricingFileReloadsWhenChanged(@TempDir java.nio.file.Path dir) throws Exception {
+        java.nio.file.Path file = dir.resolve("pricing.properties");
+        try {
+            java.nio.file.Files.writeString(file, "*=1.0, 1.0\nacme=3.0, 4.0\n");
+            assertTrue(ModelPricing.reloadIfChanged(file));
+            assertFalse(ModelPricing.reloadIfChanged(file));
+            assertEquals(7.0, TelemetryClient.calculateCost("acme-large", 1_000_000, 1_000_000), 1e-9);
+            assertEquals(2.0, TelemetryClient.calculateCost("gpt-4o", 1_000_000, 1_000_000), 1e-9);
+            
+            // A broken edit keeps the last good table
+            java.nio.file.Files.writeString(file, "acme=not a price\n");
+            java.nio.file.Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(1));
+            assertFalse(ModelPricing.reloadIfChanged(file));
+            assertEquals(7.0, TelemetryClient.calculateCost("acme-large", 1_000_000, 1_000_000), 1e-9);
+        } finally {
+            ModelPricing.reset();
+        }
+    }
+
+    @Test
+    void testPricingFileIsWatchedOncePerProcess(@TempDir java.nio.file.Path dir) throws Exception {
+        java.nio.file.Path file = dir.resolve("pricing.properties");
+        java.nio.file.Path other = dir.resolve("other.properties");
+        java.nio.file.Files.writeString(file, "acme=3.0, 4.0\n");
+        java.nio.file.Files.writeString(other, "acme=5.0, 6.0\n");
+        try {
+            TelemetryClient first = pricingClient(file);
+            TelemetryClient second = pricingClient(file);
+            assertEquals(7.0, TelemetryClient.calculateCost("acme", 1_000_000, 1_000_000), 1e-9);
+            
+            // One process-wide table - a second file is ignored rather than flipping between the two
+            pricingClient(other).shutdown();
+            assertEquals(7.0, TelemetryClient.calculateCost("acme", 1_000_000, 1_000_000), 1e-9);
+            
+            // ...and never breaks the caller
+            langmeshConfig.TelemetryConfig conflicting = langmeshConfig.TelemetryConfig.builder()
+                    .pricingFile(other)
+                    .endpoint("http://127.0.0.1:9/pricing")
+                    .build();
+            MockOpenAIService mockService = mock(MockOpenAIService.class);
+            MockOpenAIService wrapped = assertDoesNotThrow(() -> langmeshWrapper.wrap(mockService,
+                    langmeshConfig.builder("sk_pricing").telemetry(conflicting).build()));
+            assertNotNull(wrapped);
+            TelemetryClient shared = TelemetryClient.acquire("sk_pricing", conflicting);
+            shared.release();
+            shared.release();
+            
+            first.shutdown();
+            second.shutdown();
+            
+            // Nobody watches the first file any more
+            pricingClient(other).shutdown();
+            assertEquals(11.0, TelemetryClient.calculateCost("acme", 1_000_000, 1_000_000), 1e-9);
+        } finally {
+            ModelPricing.reset();
+        }
+    }
+
+    private static TelemetryClient pricingClient(java.nio.file.Path pricingFile) {
+        return new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .pricingFile(pricingFile)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+    }
+
     @Test
     void testlangmeshConfigBuilder() {
         langmeshConfig config = langmeshConfig.builder("sk_test_123")
@@ -70,6 +203,7 @@ class langmeshWrapperTest {
         assertEquals(1.0, config.getSampleRate());
         assertEquals(10, config.getBatchSize());
         assertEquals(5000, config.getFlushIntervalMs());
+        assertFalse(config.isRegisterShutdownHook());
     }
 
     @Test
@@ -103,6 +237,169 @@ class langmeshWrapperTest {
         assertEquals("req_123", ((java.util.Map<?, ?>) map.get("request")).get("requestId"));
     }
 
+    @Test
+    void testTimestampsFormatLikeInstant() {
+        long[] samples = {0L, 1L, 999_000_000L, 1_704_067_200_123_000_000L, 1_704_067_200_123_456_000L,
+                1_704_067_200_123_456_789L, 951_782_400_000_000_000L, -86_400_000_000_001L, Long.MAX_VALUE};
+        for (long nanos : samples) {
+            java.time.Instant instant = java.time.Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                    Math.floorMod(nanos, 1_000_000_000L));
+            assertEquals(instant.toString(), Timestamps.toIsoString(nanos));
+        }
+        
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .timestampStart("2024-01-01T00:00:00.250Z")
+                .build();
+        assertEquals(1_704_067_200_250_000_000L, payload.getTimestampStartNanos());
+        assertEquals("2024-01-01T00:00:00.250Z", payload.getTimestampStart());
+        assertEquals(TelemetryClient.TelemetryPayload.NO_MAX_TOKENS, payload.getMaxTokens());
+        assertTrue(Double.isNaN(payload.getTemperature()));
+    }
+
+    @Test
+    void testStreamedBatchMatchesPayloadMap() throws Exception {
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .orgId("org_test")
+                .endpoint("chat.completions")
+                .model("gpt-4o")
+                .timestampStart("2024-01-01T00:00:00Z")
+                .timestampEnd("2024-01-01T00:00:01Z")
+                .promptTokens(100)
+                .completionTokens(50)
+                .totalTokens(150)
+                .costEstimateUsd(0.001)
+                .latencyMs(1000)
+                .errorClass("RuntimeException")
+                .build();
+        
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        okio.Buffer sink = new okio.Buffer();
+        new TelemetryBatchBody(java.util.List.of(payload, payload), java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.Compression.NONE, langmeshConfig.TelemetryConfig.BatchFormat.EVENTS).writeTo(sink);
+        
+        String expected = mapper.writeValueAsString(java.util.Map.of("events", java.util.List.of(payload.toMap(), payload.toMap())));
+        assertEquals(mapper.readTree(expected), mapper.readTree(sink.readUtf8()));
+    }
+
+    @Test
+    void testDictionaryBatchFormat() throws Exception {
+        java.util.List<TelemetryClient.TelemetryPayload> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_" + i)
+                    .orgId("org_test")
+                    .endpoint("chat.completions")
+                    .model(i % 2 == 0 ? "gpt-4o" : "gpt-4o-mini")
+                    .timestampStart("2024-01-01T00:00:00Z")
+                    .timestampEnd("2024-01-01T00:00:01Z")
+                    .promptTokens(100)
+                    .build());
+        }
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        byte[] events = TelemetryBatchBody.toJson(batch, java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS);
+        byte[] encoded = TelemetryBatchBody.toJson(batch, java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.BatchFormat.DICTIONARY);
+        assertTrue(encoded.length < events.length * 2 / 3);
+        
+        com.fasterxml.jackson.databind.JsonNode root = mapper.readTree(encoded);
+        assertEquals(TelemetryBatchBody.DICTIONARY_FORMAT, root.get("format").asText());
+        assertEquals("1.0.0", root.get("context").get("sdkVersion").asText());
+        com.fasterxml.jackson.databind.JsonNode strings = root.get("strings");
+        assertEquals(4, strings.size());
+        com.fasterxml.jackson.databind.JsonNode second = root.get("events").get(1);
+        assertEquals("req_1", second.get("requestId").asText());
+        assertEquals("gpt-4o-mini", strings.get(second.get("model").asInt()).asText());
+        assertEquals("org_test", strings.get(second.get("orgId").asInt()).asText());
+        assertFalse(second.has("errorClass"));
+        assertEquals("2024-01-01T00:00:01Z", second.get("timestampEnd").asText());
+    }
+
+    @Test
+    void testCompressedBatchRoundTrip() throws Exception {
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .endpoint("chat.completions")
+                .model("gpt-4o")
+                .build();
+        java.util.List<TelemetryClient.TelemetryPayload> batch = java.util.Collections.nCopies(50, payload);
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        
+        okio.Buffer plain = new okio.Buffer();
+        new TelemetryBatchBody(batch, java.util.List.of(), mapper.getFactory(), langmeshConfig.TelemetryConfig.Compression.NONE,
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS).writeTo(plain);
+        byte[] expected = plain.readByteArray();
+        
+        okio.Buffer gzipped = new okio.Buffer();
+        new TelemetryBatchBody(batch, java.util.List.of(), mapper.getFactory(), langmeshConfig.TelemetryConfig.Compression.GZIP,
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS).writeTo(gzipped);
+        byte[] gunzipped = new java.util.zip.GZIPInputStream(gzipped.inputStream()).readAllBytes();
+        assertArrayEquals(expected, gunzipped);
+        
+        okio.Buffer deflated = new okio.Buffer();
+        new TelemetryBatchBody(batch, java.util.List.of(), mapper.getFactory(), langmeshConfig.TelemetryConfig.Compression.DEFLATE_DICTIONARY,
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS).writeTo(deflated);
+        byte[] compressed = deflated.readByteArray();
+        assertTrue(compressed.length < expected.length / 10);
+        
+        java.util.zip.Inflater inflater = new java.util.zip.Inflater();
+        inflater.setInput(compressed);
+        byte[] inflated = new byte[expected.length];
+        int n = inflater.inflate(inflated);
+        assertEquals(0, n);
+        assertTrue(inflater.needsDictionary());
+        inflater.setDictionary(TelemetryBatchBody.dictionary());
+        n = inflater.inflate(inflated);
+        inflater.end();
+        assertEquals(expected.length, n);
+        assertArrayEquals(expected, inflated);
+    }
+
+    @Test
+    void testSpoolReplaysAcrossRestartsAndEvictsOldest(@TempDir java.nio.file.Path dir) throws Exception {
+        byte[] first = "{\"events\":[1]}".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] second = "{\"events\":[2]}".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        
+        try (TelemetrySpool spool = new TelemetrySpool(dir, 1024 * 1024, 64 * 1024)) {
+            assertTrue(spool.isEmpty());
+            assertTrue(spool.append(first));
+            assertTrue(spool.append(second));
+            assertArrayEquals(first, spool.peek().data);
+            spool.commit(spool.peek());
+            
+            // The directory belongs to one spool at a time
+            assertThrows(java.io.IOException.class, () -> new TelemetrySpool(dir, 1024 * 1024, 64 * 1024));
+        }
+        
+        // Replayed records stay replayed after reopening
+        try (TelemetrySpool spool = new TelemetrySpool(dir, 1024 * 1024, 64 * 1024)) {
+            assertArrayEquals(second, spool.peek().data);
+            spool.commit(spool.peek());
+            assertNull(spool.peek());
+        }
+        
+        // Two segments max - a third forces out the oldest
+        try (TelemetrySpool spool = new TelemetrySpool(dir.resolve("capped"), 128, 64)) {
+            byte[] record = new byte[40];
+            for (int i = 0; i < 3; i++) {
+                record[0] = (byte) i;
+                assertTrue(spool.append(record.clone()));
+            }
+            assertEquals(2, spool.segmentCount());
+            assertEquals(1, spool.getEvictedRecords());
+            assertEquals(1, spool.peek().data[0]);
+            assertFalse(spool.append(new byte[100]));
+            
+            // Evicted while being replayed - the commit must not touch the next segment
+            TelemetrySpool.Entry replaying = spool.peek();
+            record[0] = 3;
+            assertTrue(spool.append(record.clone()));
+            spool.commit(replaying);
+            assertEquals(2, spool.peek().data[0]);
+        }
+    }
+
     @Test
     void testTelemetryClientPauseResume() {
         langmeshConfig.TelemetryConfig config = langmeshConfig.TelemetryConfig.builder()
@@ -147,6 +444,883 @@ class langmeshWrapperTest {
         client.shutdown();
     }
 
+    @Test
+    void testSamplingIsDeterministicPerRequest() {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .sampleRate(0.25)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        
+        int kept = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String requestId = TelemetryClient.generateRequestId();
+            boolean sampled = client.isSampled(requestId);
+            assertEquals(sampled, client.isSampled(requestId));
+            assertEquals(sampled, client.shouldRecord(requestId));
+            if (sampled) {
+                kept++;
+            }
+        }
+        assertEquals(5000, kept, 500);
+        
+        client.pause();
+        assertFalse(client.shouldRecord("req_any"));
+        client.shutdown();
+    }
+
+    @Test
+    void testTailSamplingKeepsErrorsAndOutliers() {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .sampleRate(0.0)
+                .tailSampling(true)
+                .tailLatencyThresholdMs(1000)
+                .tailCostThresholdUsd(0.1)
+                .batchSize(100)
+                .flushIntervalMs(60_000)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        assertTrue(client.shouldRecord("req_any"));
+        
+        client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_1").latencyMs(10).build());
+        client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_2").latencyMs(10)
+                .errorClass("RuntimeException").build());
+        client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_3").latencyMs(1500).build());
+        client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_4").latencyMs(10)
+                .costEstimateUsd(0.2).build());
+        
+        assertEquals(1, client.getTailSampleCount(TelemetryClient.SampleReason.ERROR));
+        assertEquals(1, client.getTailSampleCount(TelemetryClient.SampleReason.SLOW));
+        assertEquals(1, client.getTailSampleCount(TelemetryClient.SampleReason.COSTLY));
+        assertEquals(1, client.getTailSampleCount(TelemetryClient.SampleReason.DROPPED));
+        assertEquals(0, client.getTailSampleCount(TelemetryClient.SampleReason.SAMPLED));
+        assertEquals(3, client.getBufferedCount());
+        client.shutdown();
+    }
+
+    @Test
+    void testOverheadBudgetAdaptsSampleRate() throws Exception {
+        OverheadController controller = new OverheadController(0, 1000, 0.5, 0.01);
+        assertEquals(0.5, controller.rate());
+        
+        // Far over the byte budget: cut by at most half per step, down to the floor
+        for (int i = 0; i < 3; i++) {
+            controller.recordBytes(1_000_000);
+            Thread.sleep(5);
+            controller.adjust(0);
+        }
+        assertEquals(0.0625, controller.rate(), 1e-9);
+        for (int i = 0; i < 20; i++) {
+            controller.recordBytes(1_000_000);
+            controller.adjust(0);
+        }
+        assertEquals(0.01, controller.rate(), 1e-9);
+        
+        // Idle: climbs back, capped at the configured rate
+        for (int i = 0; i < 40; i++) {
+            controller.adjust(0);
+        }
+        assertEquals(0.5, controller.rate(), 1e-9);
+        
+        // A filling buffer alone is enough to back off
+        assertTrue(controller.adjust(0.95) < 0.5);
+    }
+
+    @Test
+    void testSampledEventsCarryAdaptiveRate() throws Exception {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .sampleRate(0.25)
+                .overheadBytesPerSecond(Long.MAX_VALUE)
+                .tailSampling(true)
+                .tailLatencyThresholdMs(1000)
+                .batchSize(1000)
+                .flushIntervalMs(60_000)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        TelemetryClient.TelemetryPayload slow = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_slow").latencyMs(1500).build();
+        client.submit(slow);
+        TelemetryClient.TelemetryPayload sampled = null;
+        for (int i = 0; sampled == null; i++) {
+            String requestId = "req_" + i;
+            if (client.isSampled(requestId)) {
+                sampled = TelemetryClient.TelemetryPayload.builder().requestId(requestId).latencyMs(10).build();
+                client.submit(sampled);
+            }
+        }
+        
+        // Kept by the draw: carries the rate; kept by a rule: stands for itself
+        assertEquals(0.25, sampled.getSampleRate());
+        assertTrue(Double.isNaN(slow.getSampleRate()));
+        
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        com.fasterxml.jackson.databind.JsonNode batch = mapper.readTree(TelemetryBatchBody.toJson(
+                java.util.List.of(slow, sampled), java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS));
+        assertFalse(batch.has("sampleRate"));
+        assertFalse(batch.get("events").get(0).get("context").has("sampleRate"));
+        assertEquals(0.25, batch.get("events").get(1).get("context").get("sampleRate").asDouble());
+        com.fasterxml.jackson.databind.JsonNode encoded = mapper.readTree(TelemetryBatchBody.toJson(
+                java.util.List.of(slow, sampled), java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.BatchFormat.DICTIONARY));
+        assertFalse(encoded.get("events").get(0).has("sampleRate"));
+        assertEquals(0.25, encoded.get("events").get(1).get("sampleRate").asDouble());
+        client.shutdown();
+    }
+
+    @Test
+    void testTelemetryDispatchDropsWhenSaturated() throws Exception {
+        langmeshConfig.TelemetryConfig config = langmeshConfig.TelemetryConfig.builder()
+                .workerThreads(1)
+                .workerQueueSize(1)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build();
+        
+        TelemetryClient client = new TelemetryClient("sk_test", config);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch started = new java.util.concurrent.CountDownLatch(1);
+        
+        client.dispatch(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        
+        // One task fits in the queue, the next must be dropped rather than block
+        client.dispatch(() -> { });
+        assertDoesNotThrow(() -> client.dispatch(() -> { }));
+        assertEquals(1, client.getRejectedTaskCount());
+        
+        release.countDown();
+        client.shutdown();
+    }
+
+    @Test
+    void testRingBufferConcurrentProducers() throws Exception {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3000);
+        assertEquals(4096, ring.capacity());
+        
+        int producers = 4;
+        int perProducer = 1000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    assertTrue(ring.offer(base + i));
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        
+        java.util.List<Integer> drained = new java.util.ArrayList<>();
+        ring.drainTo(drained, Integer.MAX_VALUE);
+        assertEquals(producers * perProducer, new java.util.HashSet<>(drained).size());
+        assertTrue(ring.isEmpty());
+        
+        MpscRingBuffer<Integer> small = new MpscRingBuffer<>(2);
+        assertTrue(small.offer(1));
+        assertTrue(small.offer(2));
+        assertFalse(small.offer(3));
+        assertEquals(1, small.poll());
+        assertTrue(small.offer(3));
+    }
+
+    @Test
+    void testStripedBufferHarvestsAllThreads() throws Exception {
+        StripedBuffer<Integer> striped = new StripedBuffer<>(4);
+        
+        Thread[] threads = new Thread[3];
+        for (int p = 0; p < threads.length; p++) {
+            int base = p * 10;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < 4; i++) {
+                    assertTrue(striped.offer(base + i));
+                }
+                // Stripe is full - the owner thread drops instead of spilling over
+                assertFalse(striped.offer(-1));
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        
+        assertEquals(12, striped.size());
+        java.util.List<Integer> drained = new java.util.ArrayList<>();
+        assertEquals(12, striped.drainTo(drained, Integer.MAX_VALUE));
+        assertFalse(drained.contains(-1));
+        
+        // Stripes of finished threads are released once empty
+        assertEquals(0, striped.stripeCount());
+    }
+
+    @Test
+    void testStripedClientFlushesHalfFullStripe() throws Exception {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .ingestStrategy(langmeshConfig.TelemetryConfig.IngestStrategy.STRIPED)
+                .stripeCapacity(16)
+                .flushIntervalMs(60_000)
+                .maxRetries(0)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .build();
+        for (int i = 0; i < 9; i++) {
+            client.submit(payload);
+        }
+        
+        // Drained long before the 60s flush timer
+        long deadline = System.nanoTime() + java.util.concurrent.TimeUnit.SECONDS.toNanos(10);
+        while (client.getBufferedCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, client.getBufferedCount());
+        assertEquals(0, client.getDroppedCount());
+        client.shutdown();
+    }
+
+    @Test
+    void testTenantBufferQuotasAndFairDrain() {
+        java.util.Map<String, Integer> quotas = java.util.Collections.singletonMap(
+                TenantBuffer.tenantKey("org_big", "proj_1"), 8);
+        TenantBuffer tenants = new TenantBuffer(4, quotas, 3);
+        
+        // A noisy tenant fills only its own quota
+        for (int i = 0; i < 4; i++) {
+            assertTrue(tenants.offer(tenantPayload("org_noisy", "proj_1")));
+        }
+        assertFalse(tenants.offer(tenantPayload("org_noisy", "proj_1")));
+        assertTrue(tenants.offer(tenantPayload("org_quiet", "proj_1")));
+        
+        // Overrides apply per tenant
+        for (int i = 0; i < 8; i++) {
+            assertTrue(tenants.offer(tenantPayload("org_big", "proj_1")));
+        }
+        assertFalse(tenants.offer(tenantPayload("org_big", "proj_1")));
+        
+        // Tenants past maxTenants share the overflow ring
+        assertTrue(tenants.offer(tenantPayload("org_other", null)));
+        assertEquals(3, tenants.tenantCount());
+        assertEquals(4 + 1 + 8 + 1, tenants.size());
+        
+        // A small batch still carries the quiet tenant
+        java.util.List<TelemetryClient.TelemetryPayload> batch = new java.util.ArrayList<>();
+        assertEquals(6, tenants.drainTo(batch, 6));
+        assertTrue(batch.stream().anyMatch(p -> "org_quiet".equals(p.getOrgId())));
+        assertTrue(batch.stream().anyMatch(p -> "org_other".equals(p.getOrgId())));
+        
+        // Eviction takes from the fullest tenant
+        assertEquals("org_big", tenants.poll().getOrgId());
+    }
+    
+    @Test
+    void testTenantQuotaFollowsOverflowPolicy() {
+        TelemetryClient dropOldest = tenantClient(langmeshConfig.TelemetryConfig.OverflowPolicy.DROP_OLDEST);
+        TelemetryClient dropNewest = tenantClient(langmeshConfig.TelemetryConfig.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 5; i++) {
+            dropOldest.submit(tenantPayload("org_noisy", "proj_1"));
+            dropNewest.submit(tenantPayload("org_noisy", "proj_1"));
+        }
+        
+        // The tenant's own oldest events make room for new ones
+        assertEquals(5, dropOldest.getAcceptedCount());
+        assertEquals(3, dropOldest.getDroppedCount());
+        assertEquals(2, dropOldest.getBufferedCount());
+        assertEquals(2, dropNewest.getAcceptedCount());
+        assertEquals(3, dropNewest.getDroppedCount());
+        dropOldest.shutdown();
+        dropNewest.shutdown();
+    }
+    
+    private static TelemetryClient tenantClient(langmeshConfig.TelemetryConfig.OverflowPolicy policy) {
+        return new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .ingestStrategy(langmeshConfig.TelemetryConfig.IngestStrategy.PER_TENANT)
+                .tenantBufferCapacity(2)
+                .overflowPolicy(policy)
+                .batchSize(100)
+                .flushIntervalMs(60_000)
+                .maxRetries(0)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+    }
+    
+    private static TelemetryClient.TelemetryPayload tenantPayload(String orgId, String projectId) {
+        return TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .orgId(orgId)
+                .projectId(projectId)
+                .model("gpt-4o")
+                .build();
+    }
+
+    @Test
+    void testBufferOverflowPolicies() {
+        TelemetryClient dropNewest = boundedClient(langmeshConfig.TelemetryConfig.OverflowPolicy.DROP_NEWEST);
+        TelemetryClient dropOldest = boundedClient(langmeshConfig.TelemetryConfig.OverflowPolicy.DROP_OLDEST);
+        TelemetryClient sampleDown = boundedClient(langmeshConfig.TelemetryConfig.OverflowPolicy.SAMPLE_DOWN);
+        
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .model("gpt-4o")
+                .build();
+        for (int i = 0; i < 6; i++) {
+            dropNewest.submit(payload);
+            dropOldest.submit(payload);
+            sampleDown.submit(payload);
+        }
+        
+        assertEquals(4, dropNewest.getAcceptedCount());
+        assertEquals(2, dropNewest.getDroppedCount());
+        assertEquals(6, dropOldest.getAcceptedCount());
+        assertEquals(2, dropOldest.getDroppedCount());
+        assertTrue(sampleDown.getAcceptedCount() <= 4);
+        assertEquals(6, sampleDown.getAcceptedCount() + sampleDown.getDroppedCount());
+        
+        // Nothing listens on the endpoint, so the final flush fails
+        dropNewest.shutdown();
+        dropOldest.shutdown();
+        sampleDown.shutdown();
+        assertEquals(4, dropNewest.getFailedCount());
+        assertEquals(4, dropOldest.getFailedCount());
+        assertEquals(0, dropNewest.getSentCount());
+    }
+
+    @Test
+    void testBatchSizeGrowsWithArrivalRate() throws Exception {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .batchSize(10)
+                .maxBatchSize(200)
+                .flushIntervalMs(10_000)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        assertEquals(10, client.getEffectiveBatchSize());
+        
+        TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_123")
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            client.submit(payload);
+        }
+        // Rate samples are at least 100ms apart; with a 10s interval the target
+        // stays over maxBatchSize unless this takes more than ten seconds
+        Thread.sleep(150);
+        client.flush();
+        
+        assertEquals(200, client.getEffectiveBatchSize());
+        client.shutdown();
+    }
+
+    @Test
+    void testRollupAggregatesPerKey() {
+        TelemetryRollup rollup = new TelemetryRollup();
+        for (int i = 0; i < 3; i++) {
+            rollup.record(TelemetryClient.TelemetryPayload.builder()
+                    .endpoint("chat.completions")
+                    .model("gpt-4o")
+                    .totalTokens(100)
+                    .costEstimateUsd(0.5)
+                    .latencyMs(40 + i * 100)
+                    .build());
+        }
+        rollup.record(TelemetryClient.TelemetryPayload.builder()
+                .endpoint("chat.completions")
+                .model("gpt-4o")
+                .errorClass("RateLimitException")
+                .build());
+        
+        // Records come out one rotation after their window closes
+        assertTrue(rollup.rotate().isEmpty());
+        java.util.List<TelemetryRollup.Record> records = rollup.rotate();
+        assertEquals(2, records.size());
+        
+        TelemetryRollup.Record success = records.stream()
+                .filter(r -> r.getErrorClass() == null)
+                .findFirst()
+                .orElseThrow();
+        assertEquals(3, success.getCount());
+        assertEquals(300, success.getTotalTokens());
+        assertEquals(1.5, success.getCostUsd(), 1e-9);
+        long[] buckets = success.getLatencyBuckets();
+        assertEquals(1, buckets[TelemetryRollup.bucketFor(40)]);
+        assertEquals(2, buckets[TelemetryRollup.bucketFor(240)]);
+        assertTrue(rollup.isIdle());
+    }
+
+    @Test
+    void testAggregationOnlyBuffersErrors() {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .aggregation(true)
+                .batchSize(100)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        
+        client.submit(TelemetryClient.TelemetryPayload.builder().model("gpt-4o").build());
+        client.submit(TelemetryClient.TelemetryPayload.builder().model("gpt-4o").errorClass("IOException").build());
+        
+        assertEquals(1, client.getAcceptedCount());
+        client.shutdown();
+    }
+
+    @Test
+    void testCircuitBreakerHalfOpenProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 50);
+        
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        
+        Thread.sleep(60);
+        // Exactly one probe gets through once the open period has elapsed
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        
+        Thread.sleep(60);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void testHalfOpenProbeLeavesBufferedEvents() throws Exception {
+        java.util.concurrent.atomic.AtomicInteger requests = new java.util.concurrent.atomic.AtomicInteger();
+        com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/telemetry", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .batchSize(10)
+                    .maxBatchSize(10)
+                    .maxRetries(0)
+                    .circuitFailureThreshold(1)
+                    .circuitOpenMs(200)
+                    .flushIntervalMs(60_000)
+                    .shutdownTimeoutMs(100)
+                    .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry")
+                    .build());
+            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_123")
+                    .build();
+            
+            // One failed batch opens the circuit
+            for (int i = 0; i < 10; i++) {
+                client.submit(payload);
+            }
+            waitFor(() -> client.getFailedCount() == 10);
+            for (int i = 0; i < 200; i++) {
+                client.submit(payload);
+            }
+            
+            // The open period is over: one batch probes, the rest stays buffered
+            Thread.sleep(250);
+            client.flush();
+            waitFor(() -> client.getFailedCount() == 20);
+            assertEquals(2, requests.get());
+            assertEquals(190, client.getBufferedCount());
+            assertEquals(0, client.getDroppedCount());
+            client.shutdown();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testRejectedUploadsAreFailedNotSent(@TempDir java.nio.file.Path dir) throws Exception {
+        int[] statuses = {401, 503, 401};
+        java.util.concurrent.atomic.AtomicInteger requests = new java.util.concurrent.atomic.AtomicInteger();
+        com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/telemetry", exchange -> {
+            int n = requests.getAndIncrement();
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(statuses[Math.min(n, statuses.length - 1)], -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .batchSize(10)
+                    .maxBatchSize(10)
+                    .maxRetries(3)
+                    .circuitFailureThreshold(1)
+                    .circuitOpenMs(200)
+                    .flushIntervalMs(60_000)
+                    .shutdownTimeoutMs(100)
+                    .spoolDirectory(dir)
+                    .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry")
+                    .build());
+            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_123")
+                    .build();
+            
+            // 401: failed, not retried, not spooled, and no word on the circuit
+            for (int i = 0; i < 10; i++) {
+                client.submit(payload);
+            }
+            waitFor(() -> client.getFailedCount() == 10);
+            assertEquals(1, requests.get());
+            assertEquals(0, client.getSentCount());
+            assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState());
+            
+            // 503 opens the circuit and spools the next batch; the replay probe is
+            // refused and the record dropped
+            for (int i = 0; i < 10; i++) {
+                client.submit(payload);
+            }
+            waitFor(() -> client.getFailedCount() == 20);
+            waitFor(() -> requests.get() == 3);
+            client.shutdown();
+            assertEquals(3, requests.get());
+            assertEquals(0, client.getSentCount());
+        } finally {
+            server.stop(0);
+        }
+        try (java.util.stream.Stream<java.nio.file.Path> owners = java.nio.file.Files.list(dir)) {
+            java.nio.file.Path owner = owners.findFirst().orElseThrow(AssertionError::new);
+            try (TelemetrySpool spool = new TelemetrySpool(owner, 1024 * 1024, 64 * 1024)) {
+                assertNull(spool.peek());
+            }
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + java.util.concurrent.TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testRetryBackoffIsJitteredAndCapped() {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .retryInitialBackoffMs(100)
+                .retryMaxBackoffMs(1000)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << attempt);
+            long delay = client.retryDelayMs(attempt);
+            assertTrue(delay >= 0 && delay <= ceiling, "attempt " + attempt);
+        }
+        assertTrue(TelemetryClient.isRetryable(503));
+        assertTrue(TelemetryClient.isRetryable(429));
+        assertFalse(TelemetryClient.isRetryable(400));
+        client.shutdown();
+    }
+
+    @Test
+    void testFlushDoesNotWaitOnSlowEndpoint() throws Exception {
+        // Accepts connections but never answers
+        try (java.net.ServerSocket server = new java.net.ServerSocket(0)) {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .batchSize(2)
+                    .maxBatchSize(2)
+                    .maxInFlightUploads(1)
+                    .maxRetries(0)
+                    .uploadTimeoutMs(10_000)
+                    .flushIntervalMs(60_000)
+                    .registerShutdownHook(false)
+                    .shutdownTimeoutMs(100)
+                    .endpoint("http://127.0.0.1:" + server.getLocalPort() + "/telemetry")
+                    .build());
+            
+            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_123")
+                    .build();
+            for (int i = 0; i < 6; i++) {
+                client.submit(payload);
+            }
+            
+            client.flush();
+            
+            // Returned while the upload is still unanswered: one batch of two is
+            // in flight and the rest waits in the buffer
+            assertEquals(0, client.getSentCount() + client.getFailedCount());
+            assertEquals(4, client.getBufferedCount());
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void testShutdownIsBoundedByDeadline() throws Exception {
+        try (java.net.ServerSocket server = new java.net.ServerSocket(0)) {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .batchSize(2)
+                    .maxBatchSize(2)
+                    .maxRetries(3)
+                    .maxInFlightUploads(1)
+                    .uploadTimeoutMs(10_000)
+                    .shutdownTimeoutMs(300)
+                    .registerShutdownHook(false)
+                    .flushIntervalMs(60_000)
+                    .endpoint("http://127.0.0.1:" + server.getLocalPort() + "/telemetry")
+                    .build());
+            
+            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_123")
+                    .build();
+            for (int i = 0; i < 40; i++) {
+                client.submit(payload);
+            }
+            
+            // Uploads hang for 10s; shutdown must give up on them long before
+            long start = System.nanoTime();
+            client.close();
+            assertTrue(System.nanoTime() - start < java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(5000));
+            assertEquals(0, client.getBufferedCount());
+            // At most 1 + 16 upload slots; batches that found none are recorded as failed
+            assertEquals(0, client.getSentCount());
+            assertTrue(client.getFailedCount() >= 6, "failed " + client.getFailedCount());
+            
+            // Second close is a no-op
+            client.close();
+        }
+    }
+
+    @Test
+    void testShutdownDrainsMoreBatchesThanUploadSlots() throws Exception {
+        com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/telemetry", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .batchSize(10)
+                    .maxBatchSize(10)
+                    .maxInFlightUploads(1)
+                    .flushIntervalMs(60_000)
+                    .shutdownTimeoutMs(10_000)
+                    .registerShutdownHook(false)
+                    .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry")
+                    .build());
+            TelemetryClient.TelemetryPayload payload = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_123")
+                    .build();
+            for (int i = 0; i < 400; i++) {
+                client.submit(payload);
+            }
+            
+            // 40 batches against 1 + 16 upload slots
+            client.shutdown();
+            assertEquals(400, client.getSentCount());
+            assertEquals(0, client.getFailedCount());
+            assertEquals(0, client.getBufferedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testErrorsTakePriorityLane() throws Exception {
+        java.util.concurrent.BlockingQueue<String> bodies = new java.util.concurrent.LinkedBlockingQueue<>();
+        com.sun.net.httpserver.HttpServer server = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/telemetry", exchange -> {
+            bodies.add(new String(exchange.getRequestBody().readAllBytes(), java.nio.charset.StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                    .priorityErrors(true)
+                    .batchSize(100)
+                    .flushIntervalMs(60_000)
+                    .registerShutdownHook(false)
+                    .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry")
+                    .build());
+            
+            client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_ok").build());
+            client.submit(TelemetryClient.TelemetryPayload.builder().requestId("req_err")
+                    .errorClass("RuntimeException").build());
+            
+            // The error goes out on its own long before the 60s flush timer
+            String body = bodies.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+            assertNotNull(body);
+            assertTrue(body.contains("req_err"));
+            assertFalse(body.contains("req_ok"));
+            assertEquals(1, client.getBufferedCount());
+            client.shutdown();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testRepeatedErrorsAreCoalesced() throws Exception {
+        TelemetryClient client = new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .errorCoalescing(true)
+                .errorCoalesceWindowMs(60_000)
+                .batchSize(1000)
+                .flushIntervalMs(60_000)
+                .registerShutdownHook(false)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+        for (int i = 1; i <= 100; i++) {
+            client.submit(TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_" + i).endpoint("chat.completions").model("gpt-4o")
+                    .errorClass("OpenAiHttpException").errorMessage("Rate limit reached")
+                    .latencyMs(i).build());
+        }
+        client.submit(TelemetryClient.TelemetryPayload.builder()
+                .requestId("req_other").endpoint("chat.completions").model("gpt-4o")
+                .errorClass("OpenAiHttpException").errorMessage("Server error").build());
+        
+        // The first of each kind goes out; the repeats are only counted
+        assertEquals(2, client.getBufferedCount());
+        assertEquals(99, client.getCoalescedErrorCount());
+        client.shutdown();
+        
+        ErrorCoalescer coalescer = new ErrorCoalescer();
+        for (int i = 1; i <= 4; i++) {
+            TelemetryClient.TelemetryPayload error = TelemetryClient.TelemetryPayload.builder()
+                    .requestId("req_" + i).errorClass("SocketTimeoutException").latencyMs(i * 100)
+                    .timestampStartNanos(i * 1_000_000_000L).timestampEndNanos(i * 1_000_000_000L + 1)
+                    .build();
+            assertEquals(i > 1, coalescer.absorb(error));
+        }
+        java.util.List<TelemetryClient.TelemetryPayload> events = coalescer.drain();
+        assertEquals(1, events.size());
+        TelemetryClient.TelemetryPayload event = events.get(0);
+        assertEquals(3, event.getOccurrences());
+        assertEquals("req_2", event.getRequestId());
+        assertEquals(300, event.getLatencyMs());
+        assertEquals(200, event.getLatencyMinMs());
+        assertEquals(400, event.getLatencyMaxMs());
+        assertEquals(4_000_000_001L, event.getTimestampEndNanos());
+        assertTrue(coalescer.isIdle());
+        
+        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+        String json = new String(TelemetryBatchBody.toJson(events, java.util.List.of(), mapper.getFactory(),
+                langmeshConfig.TelemetryConfig.BatchFormat.EVENTS), java.nio.charset.StandardCharsets.UTF_8);
+        assertEquals(mapper.readTree(mapper.writeValueAsString(java.util.Map.of("events", java.util.List.of(event.toMap())))),
+                mapper.readTree(json));
+        assertEquals(3, mapper.readTree(json).get("events").get(0).get("response").get("occurrences").asInt());
+    }
+
+    @Test
+    void testSharedClientIsReferenceCounted() {
+        langmeshConfig.TelemetryConfig config = langmeshConfig.TelemetryConfig.builder()
+                .endpoint("http://127.0.0.1:9/shared")
+                .build();
+        langmeshConfig.TelemetryConfig otherEndpoint = langmeshConfig.TelemetryConfig.builder()
+                .endpoint("http://127.0.0.1:9/other")
+                .build();
+        
+        TelemetryClient first = TelemetryClient.acquire("sk_shared", config);
+        TelemetryClient second = TelemetryClient.acquire("sk_shared", config);
+        TelemetryClient other = TelemetryClient.acquire("sk_shared", otherEndpoint);
+        assertSame(first, second);
+        assertNotSame(first, other);
+        
+        // Equal settings share a client; different settings never get the first caller's
+        TelemetryClient equal = TelemetryClient.acquire("sk_shared", langmeshConfig.TelemetryConfig.builder()
+                .endpoint("http://127.0.0.1:9/shared")
+                .build());
+        TelemetryClient disabled = TelemetryClient.acquire("sk_shared", langmeshConfig.TelemetryConfig.builder()
+                .endpoint("http://127.0.0.1:9/shared")
+                .enabled(false)
+                .build());
+        assertSame(first, equal);
+        assertNotSame(first, disabled);
+        equal.release();
+        disabled.release();
+        
+        first.release();
+        assertSame(first, TelemetryClient.acquire("sk_shared", config));
+        first.release();
+        second.release();
+        
+        // Last reference gone - the next caller gets a fresh client
+        TelemetryClient fresh = TelemetryClient.acquire("sk_shared", config);
+        assertNotSame(first, fresh);
+        fresh.release();
+        other.release();
+    }
+
+    private static TelemetryClient boundedClient(langmeshConfig.TelemetryConfig.OverflowPolicy policy) {
+        return new TelemetryClient("sk_test", langmeshConfig.TelemetryConfig.builder()
+                .bufferCapacity(4)
+                .batchSize(100)
+                .flushIntervalMs(60_000)
+                .overflowPolicy(policy)
+                .maxRetries(0)
+                .endpoint("http://127.0.0.1:9/telemetry")
+                .build());
+    }
+
+    @Test
+    void testRequestPromptHashCoversRolesAndContent() {
+        langmeshConfig.TelemetryConfig.PromptHash sha = langmeshConfig.TelemetryConfig.PromptHash.SHA256;
+        ChatRequest request = new ChatRequest(java.util.List.of(
+                new ChatMessage("system", "You are terse."),
+                new ChatMessage("user", "Hello")));
+        
+        String hash = langmeshWrapper.hashRequestPrompt(request, sha);
+        assertEquals(16, hash.length());
+        assertEquals(hash, langmeshWrapper.hashRequestPrompt(request, sha));
+        
+        // Same text, different message boundaries or roles
+        assertNotEquals(hash, langmeshWrapper.hashRequestPrompt(new ChatRequest(java.util.List.of(
+                new ChatMessage("system", "You are terse.Hello"))), sha));
+        assertNotEquals(hash, langmeshWrapper.hashRequestPrompt(new ChatRequest(java.util.List.of(
+                new ChatMessage("user", "You are terse."),
+                new ChatMessage("user", "Hello"))), sha));
+        
+        assertNull(langmeshWrapper.hashRequestPrompt(new Object(), sha));
+    }
+
+    public static class ChatRequest {
+        private final java.util.List<ChatMessage> messages;
+        ChatRequest(java.util.List<ChatMessage> messages) { this.messages = messages; }
+        public java.util.List<ChatMessage> getMessages() { return messages; }
+    }
+
+    public static class ChatMessage {
+        private final String role;
+        private final String content;
+        ChatMessage(String role, String content) { this.role = role; this.content = content; }
+        public String getRole() { return role; }
+        public String getContent() { return content; }
+    }
+
     @Test
     void testProxyModeConfiguration() {
         langmeshConfig configNoProxy = langmeshConfig.builder("sk_test_123")